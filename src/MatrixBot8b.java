@@ -8,6 +8,7 @@ import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.TreeSet;
 
+import hlt2.Bot;
 import hlt2.Collision;
 import hlt2.Constants;
 import hlt2.DisjointSet;
@@ -24,10 +25,15 @@ import hlt2.Ship.DockingStatus;
 import hlt2.ThrustMove;
 import hlt2.Entity;
 
-public class MatrixBot8b {
+public class MatrixBot8b implements Bot {
 	
 	private final String botName = "MatrixBot8b"; // adjusting the waiting for reinforcements
 	
+    @Override
+    public void takeTurn() {
+    	performOneMove();
+    }
+
     private void performOneMove() {
     	networking.updateMap(gameMap);
     	taskAssignments.clear();
@@ -54,7 +60,7 @@ public class MatrixBot8b {
     	dealWithCollisions();
     	dealWithCollisions();
     	
-    	Networking.sendMoves(moveList);
+    	networking.submitMoves(moveList);
     }
 	
 	private final Networking networking;
@@ -102,14 +108,14 @@ public class MatrixBot8b {
 	private final ArrayList<Move> moveList = new ArrayList<>();
 	
     public static void main(final String[] args) {
-    	MatrixBot8b myBot = new MatrixBot8b();
+    	MatrixBot8b myBot = new MatrixBot8b(new Networking());
         for (;;) {
         	myBot.performOneMove();
         }
     }
     
-    private MatrixBot8b() {
-        networking = new Networking();
+    public MatrixBot8b(final Networking networking) {
+        this.networking = networking;
         gameMap = networking.initialize(botName);
         gameMap.setMyStillShips(myStillShips);
         aShipIds = null;
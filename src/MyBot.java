@@ -1,36 +1,55 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.TreeSet;
 
-import hlt2.Collision;
+import hlt2.Bot;
+import hlt2.CombatResolver;
 import hlt2.Constants;
+import hlt2.CostTable;
 import hlt2.DisjointSet;
 import hlt2.DockMove;
 import hlt2.GameMap;
 import hlt2.Log;
+import hlt2.MapEvent;
+import hlt2.MinCostAssignment;
+import hlt2.Metrics;
+import hlt2.MoveGroups;
+import hlt2.MoveSearch;
 import hlt2.Move;
 import hlt2.Navigation;
+import hlt2.Parallel;
 import hlt2.Networking;
 import hlt2.Planet;
+import hlt2.PlanetGraph;
 import hlt2.Position;
 import hlt2.Ship;
 import hlt2.Ship.DockingStatus;
 import hlt2.ThrustMove;
+import hlt2.TravelFields;
+import hlt2.TurnClock;
 import hlt2.Entity;
 
-public class MyBot {
+public class MyBot implements Bot {
 	
 	private final String botName = "MatrixBot9";
 	// don't run up to be next to enemy ship; instead, attack from outskirts of weapon range (5?)
 	
+    @Override
+    public void takeTurn() {
+    	performOneMove();
+    }
+
     private void performOneMove() {
     	networking.updateMap(gameMap);
+    	turnClock.beginStage("setup");
     	taskAssignments.clear();
     	shipPlanetAssignments.clear();
     	prevRushShipPlanetAssignments.clear();
@@ -39,27 +58,41 @@ public class MyBot {
     	moveList.clear();
     	remainingShipIndices.clear();
     	remainingTaskIndices.clear();
+    	fightingIdx.clear();
     	
     	listAvailableShips();
+    	turnClock.beginStage("listHostileShips");
     	listHostileShips();
+    	turnClock.beginStage("makeTasks");
     	valueAllPlanets();
     	makeTasks();
 //    	Log.log(taskList.size() + " ");
     	if (!taskList.isEmpty() && !availableShips.isEmpty()) {
+    		turnClock.beginStage("calcDists");
     		calcDists();
     		calcCosts();
+    		turnClock.beginStage("assignTasks");
     		assignTasks();
+    		turnClock.beginStage("makeMoves");
     		makeMoves();
-    		regroupAsNeeded();
+    		turnClock.beginStage("regroupAsNeeded");
+    		if (!turnClock.pastHardDeadline()) regroupAsNeeded();
     	}
-    	dealWithCollisions();
-    	dealWithCollisions();
+    	// every group is solved at once against a frozen copy of the planned moves, then
+    	// whatever still collides after the merge is solved again with what it ran into
+    	turnClock.beginStage("dealWithCollisions");
+    	if (!turnClock.pastHardDeadline()) dealWithCollisions();
+    	turnClock.endStage();
     	
-    	Networking.sendMoves(moveList);
+    	rememberThrustMoves();
+    	networking.submitMoves(moveList);
+    	Log.log(turnClock.summary());
+    	Metrics.endTurn(networking.getTurn(), turnClock, gameMap.getAllShips().size(), planetGraph.getQueries());
     }
 	
 	private final Networking networking;
 	private final GameMap gameMap;
+	private final TurnClock turnClock;
 	private final String initialMapIntelligence;
 	private final int numPlayers;
 	
@@ -93,7 +126,35 @@ public class MyBot {
     
     private double[][] distances;
     private double[][] shipTaskCosts;
+    private final CostTable distanceCache = new CostTable();
+    // below these sizes the fork/join overhead outweighs the work
+    private static final int PARALLEL_MIN_PAIRS = 16384;
+    private static final int PARALLEL_MIN_PLANETS = 16;
     private final HashMap<Integer, Integer> numShipsAssignedToGoDock = new HashMap<>();
+    private final MinCostAssignment taskSolver = new MinCostAssignment();
+    private final MoveGroups moveGroups = new MoveGroups();
+    private final CombatResolver combat = new CombatResolver();
+    private static final int OWN_TEAM = 0, ENEMY_TEAM = 1;
+    private static final int FORECAST_TURNS = 2;
+    // anyone further than this cannot reach a ship in FORECAST_TURNS and still shoot
+    private static final double ENGAGEMENT_RADIUS = CombatResolver.FIRING_RANGE + 2 * Constants.MAX_SPEED;
+    // health dealt minus health lost below which a ship that would die staying put retreats:
+    // any losing trade, since holding still buys nothing
+    private static final int RETREAT_EXCHANGE_HERE = 0;
+    // the same for the fight at the ship's destination, which its task sent it into; it goes on
+    // unless the trade is worse than a shot down, since turning back gives up the task
+    private static final int RETREAT_EXCHANGE_DEST = -Constants.WEAPON_DAMAGE;
+    // an attack a fresh ship would die in for a trade worse than this costs ATTACK_LOSING_FACTOR times as much
+    private static final int ATTACK_LOSING_EXCHANGE = -Constants.WEAPON_DAMAGE;
+    private static final double ATTACK_LOSING_FACTOR = 2;
+    // ships in the fight being forecast, reused from one forecast to the next
+    private final ArrayList<Ship> engaged = new ArrayList<>();
+    // moveList indices of the ships regroupAsNeeded found in a fight this turn
+    private final ArrayList<Integer> fightingIdx = new ArrayList<>();
+    private final PlanetGraph planetGraph;
+    private final TravelFields travelFields;
+    // outside-option cost for a ship with no unlimited task to fall back on; never chosen over a real task
+    private static final double NO_FALLBACK_COST = 1e9;
     private int[] numShipsForTask;
     private final HashMap<Integer, ArrayList<Ship>> taskAssignments = new HashMap<>();
     private final HashMap<Integer, Integer> shipPlanetAssignments = new HashMap<>();
@@ -101,17 +162,20 @@ public class MyBot {
     private final HashMap<Integer, Integer> rushShipPlanetAssignments = new HashMap<>();
     
 	private final ArrayList<Move> moveList = new ArrayList<>();
+	// last turn's thrust per ship id, re-sent when a turn runs out of time
+	private final HashMap<Integer, ThrustMove> lastThrustMoves = new HashMap<>();
 	
     public static void main(final String[] args) {
-    	MyBot myBot = new MyBot();
+    	MyBot myBot = new MyBot(new Networking());
         for (;;) {
         	myBot.performOneMove();
         }
     }
     
-    private MyBot() {
-        networking = new Networking();
+    public MyBot(final Networking networking) {
+        this.networking = networking;
         gameMap = networking.initialize(botName);
+        turnClock = networking.getTurnClock();
         gameMap.setMyStillShips(myStillShips);
         aShipIds = null;
         distances = null;
@@ -128,6 +192,20 @@ public class MyBot {
                 "; players: " + numPlayers +
                 "; planets: " + gameMap.getAllPlanets().size();
         Log.log(initialMapIntelligence);
+        planetGraph = new PlanetGraph(gameMap);
+        Log.log("planet graph: " + planetGraph.getNumNodes() + " nodes");
+        final long fieldsStart = System.nanoTime();
+        travelFields = new TravelFields(gameMap);
+        Log.log(String.format("travel fields: %d planets in %.1f ms",
+        		travelFields.getNumFields(), (System.nanoTime() - fieldsStart) / 1e6));
+        gameMap.addListener(e -> {
+        	if (e.getType() == MapEvent.Type.PLANET_DESTROYED) {
+        		planetGraph.planetDestroyed(e.getId());
+        		travelFields.planetDestroyed(gameMap, e.getId());
+        		// cached travel distances went around the planet that is gone
+        		distanceCache.invalidateCols(MyBot::usesTravelFields);
+        	}
+        });
         
         
         threatParam = (numPlayers == 2) ? 1.1 : 10;
@@ -147,10 +225,10 @@ public class MyBot {
 				myStillShips.add(ship);
 			}
 		}
-		if (!availableShips.isEmpty()) {
+		if (!availableShips.isEmpty() && Log.isDebugEnabled()) {
 			String s = "";
 			for (Ship ship : availableShips) s += ship.getId() + ", ";
-			Log.log("ships " + s);
+			Log.debug("ships %s", s);
 		}
     }
     
@@ -162,9 +240,20 @@ public class MyBot {
         numplDHostiles.clear();
         plThreateningHostiles.clear();
         
-        for (final Planet planet : gameMap.getAllPlanets().values()) {
-        	Map<Double, Ship> aMap = gameMap.hostilesNearPlanet(planet);
-        	Map<Double, Ship> bMap = gameMap.undockedHostilesNearPlanet(planet);
+        // the three scans per planet are independent; gather them in parallel, then file them in order
+        final Planet[] planets = gameMap.getAllPlanets().values().toArray(new Planet[0]);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Map<Double, Ship>[][] found = new Map[planets.length][3];
+        Parallel.forEach(planets.length, PARALLEL_MIN_PLANETS, i -> {
+        	found[i][0] = gameMap.hostilesNearPlanet(planets[i]);
+        	found[i][1] = gameMap.undockedHostilesNearPlanet(planets[i]);
+        	found[i][2] = gameMap.hostilesNearPlanet(planets[i], threatParam2);
+        });
+        
+        for (int i = 0; i < planets.length; i++) {
+        	final Planet planet = planets[i];
+        	Map<Double, Ship> aMap = found[i][0];
+        	Map<Double, Ship> bMap = found[i][1];
         	
         	plHostiles.put(planet.getId(), aMap);
         	numplHostiles.put(planet.getId(), aMap.size());
@@ -172,7 +261,7 @@ public class MyBot {
         	numplUdHostiles.put(planet.getId(), bMap.size());
         	numplDHostiles.put(planet.getId(), aMap.size() - bMap.size());
         	
-    		plThreateningHostiles.put(planet.getId(), gameMap.hostilesNearPlanet(planet, threatParam2));
+    		plThreateningHostiles.put(planet.getId(), found[i][2]);
         }
     }
     
@@ -345,50 +434,137 @@ public class MyBot {
     		idx++;
     	}
     	
-    	// the tasks have the same indices as in taskList
-    	distances = new double[taskList.size()][availableShips.size()];
+    	// the tasks have the same indices as in taskList; the arrays only grow,
+    	// so entries past the current sizes are leftovers and never read
+    	if (distances == null || distances.length < taskList.size()
+    			|| distances[0].length < availableShips.size()) {
+    		int rows = Math.max(taskList.size(), distances == null ? 0 : distances.length);
+    		int cols = Math.max(availableShips.size(), distances == null ? 0 : distances[0].length);
+    		distances = new double[rows][cols];
+    		shipTaskCosts = new double[rows][cols];
+    	}
+    	
+    	// only entries whose ship or task endpoints moved since last turn are recomputed
+    	distanceCache.beginTurn();
+    	int[] rowOf = new int[availableShips.size()];
     	for (int asIdx = 0; asIdx < availableShips.size(); asIdx++) {
     		Ship s = availableShips.get(asIdx);
+    		rowOf[asIdx] = distanceCache.row(s.getId(), s.getXPos(), s.getYPos());
+    	}
+    	int[] colOf = new int[taskList.size()];
+    	for (int tIdx = 0; tIdx < taskList.size(); tIdx++) {
+    		Task t = taskList.get(tIdx);
+    		Planet p = t.planet;
+    		Ship targetShip = t.targetShip;
+    		colOf[tIdx] = distanceCache.col(taskKey(t),
+    				p == null ? 0 : p.getXPos(), p == null ? 0 : p.getYPos(),
+    				targetShip == null ? 0 : targetShip.getXPos(), targetShip == null ? 0 : targetShip.getYPos());
+    	}
+    	
+    	// one ship per index: each touches only its own cache row and distances column
+    	int[] computedPerShip = new int[availableShips.size()];
+    	Parallel.forEach(availableShips.size(), Math.max(1, PARALLEL_MIN_PAIRS / taskList.size()), asIdx -> {
+    		Ship s = availableShips.get(asIdx);
+    		int row = rowOf[asIdx];
     		for (int tIdx = 0; tIdx < taskList.size(); tIdx++) {
-    			double dist = 0;
-    			Planet p = taskList.get(tIdx).planet;
-    			Ship targetShip = taskList.get(tIdx).targetShip;
-    			switch (taskList.get(tIdx).taskType)
-    			{
-    			case DEFEND_FRIENDLY_PLANET:
-    			case DEFEND_NEUTRAL_PLANET:
-    				dist += 0.3*p.getDistanceTo(targetShip);
-    			case DOCK_PLANET:
-    			case TRAVEL_DOCK_PLANET:
-    				dist += p.getDistanceTo(s) - p.getRadius();
-    				break;
-    			case KILL_DOCKED_ENEMIES:
-    			case RUSH_KILL_DOCKED_ENEMIES:
-    			case KILL_ENEMIES_NEAR_FRIENDLY_PLANET:
-    			case KILL_ENEMIES_NEAR_NEUTRAL_PLANET:
-    				dist = s.getDistanceTo(targetShip) - s.getRadius();
-    				break;
-    			case STILL:
-    				dist = gameMap.getHeight() + gameMap.getHeight();
-    				break;
+    			int col = colOf[tIdx];
+    			if (!distanceCache.isValid(row, col)) {
+    				distanceCache.set(row, col, taskDistance(taskList.get(tIdx), s));
+    				computedPerShip[asIdx]++;
     			}
-    			distances[tIdx][asIdx] = dist;
+    			distances[tIdx][asIdx] = distanceCache.get(row, col);
     		}
+    	});
+    	distanceCache.retireUnseen();
+    	if (Log.isDebugEnabled()) {
+    		int computed = 0;
+    		for (int c : computedPerShip) computed += c;
+    		Log.debug("distances: %d computed, %d reused", computed, taskList.size() * availableShips.size() - computed);
     	}
 //    	Log.log(Arrays.deepToString(distances));
     }
     
+    private double taskDistance(Task task, Ship s) {
+    	double dist = 0;
+    	Planet p = task.planet;
+    	Ship targetShip = task.targetShip;
+    	switch (task.taskType)
+    	{
+    	case DEFEND_FRIENDLY_PLANET:
+    	case DEFEND_NEUTRAL_PLANET:
+    		dist += 0.3*p.getDistanceTo(targetShip);
+    	case DOCK_PLANET:
+    	case TRAVEL_DOCK_PLANET:
+    		dist += travelFields.distance(p, s);
+    		break;
+    	case KILL_DOCKED_ENEMIES:
+    	case RUSH_KILL_DOCKED_ENEMIES:
+    	case KILL_ENEMIES_NEAR_FRIENDLY_PLANET:
+    	case KILL_ENEMIES_NEAR_NEUTRAL_PLANET:
+    		dist = s.getDistanceTo(targetShip) - s.getRadius();
+    		break;
+    	case STILL:
+    		dist = gameMap.getHeight() + gameMap.getHeight();
+    		break;
+    	}
+    	return dist;
+    }
+    
+    // whether taskDistance reads travelFields for the task with this key
+    private static boolean usesTravelFields(long taskKey) {
+    	switch (TaskType.values()[(int) (taskKey >>> 48)]) {
+    	case DEFEND_FRIENDLY_PLANET:
+    	case DEFEND_NEUTRAL_PLANET:
+    	case DOCK_PLANET:
+    	case TRAVEL_DOCK_PLANET:
+    		return true;
+    	default:
+    		return false;
+    	}
+    }
+    
+    // identity of a task across turns: type, planet and target ship
+    private static long taskKey(Task t) {
+    	long planetPart = t.planet == null ? 0 : t.planet.getId() + 1;
+    	long shipPart = t.targetShip == null ? 0 : t.targetShip.getId() + 1;
+    	return ((long) t.taskType.ordinal() << 48) | (planetPart << 24) | shipPart;
+    }
+    
     private void calcCosts() { // naive
-    	shipTaskCosts = new double[distances.length][distances[0].length];
     	for (int tIdx = 0; tIdx < taskList.size(); tIdx++) {
-    		Planet p = taskList.get(tIdx).planet;
+    		Task t = taskList.get(tIdx);
+    		Planet p = t.planet;
     		double planetValue = (p != null) ? planetValuations.get(p.getId()) : 1;
+    		double factor = isAttack(t.taskType) && attackLoses(t.targetShip) ? ATTACK_LOSING_FACTOR : 1;
     		for (int asIdx = 0; asIdx < availableShips.size(); asIdx++) {
-    			shipTaskCosts[tIdx][asIdx] = distances[tIdx][asIdx] / planetValue;
+    			shipTaskCosts[tIdx][asIdx] = factor * distances[tIdx][asIdx] / planetValue;
     		}
     	}
     }
     
+    private static boolean isAttack(TaskType tt) {
+    	switch (tt) {
+    	case KILL_DOCKED_ENEMIES:
+    	case RUSH_KILL_DOCKED_ENEMIES:
+    	case KILL_ENEMIES_NEAR_FRIENDLY_PLANET:
+    	case KILL_ENEMIES_NEAR_NEUTRAL_PLANET:
+    		return true;
+    	default:
+    		return false;
+    	}
+    }
+    
+    // whether a fresh ship sent at target would die in the fight around it, for a losing trade
+    private boolean attackLoses(Ship target) {
+    	gameMap.shipsWithinDistance(null, target.getXPos(), target.getYPos(), ENGAGEMENT_RADIUS, engaged);
+    	combat.clear();
+    	int me = combat.add(OWN_TEAM, target.getXPos(), target.getYPos(), Constants.MAX_SHIP_HEALTH, true, 0);
+    	addEngaged();
+    	combat.resolve(FORECAST_TURNS, Constants.MAX_SPEED);
+    	return !combat.isAlive(me)
+    			&& combat.getHealthLost(ENEMY_TEAM) - combat.getHealthLost(OWN_TEAM) < ATTACK_LOSING_EXCHANGE;
+    }
+    
     private void assignTasks() { // not legit
     	numShipsAssignedToGoDock.clear();
     	numShipsForTask = new int[taskList.size()];
@@ -422,31 +598,11 @@ public class MyBot {
     	ArrayList<Integer> altRemTaskIndices = filterTaskIndicesForTravelDock();
 //    	Log.log("task indices for travel dock: " + remainingTaskIndices.toString());
     	
-    	// TRAVEL_DOCK_PLANET needs to be competing with some other tasks
-    	// need to figure out which ships are close enough to a planet to be assigned this
-    	
-    	assignTravelDockingTasks(altRemTaskIndices);
-
-//    	for (Integer t: remTaskIndices) {
-//    		Log.log(t + ": " + Arrays.toString(distances[t]));
-//    	}
-    	
-//    	listNearestPlanetsIds(remainingShipIndices, remainingTaskIndices);
-    	
     	filterTaskIndicesAfterTravelDock();
     	
-    	for (Integer i : remainingShipIndices) {
-    		double minCost = Double.MAX_VALUE;
-    		int minTIdx = -1;
-    		for (Integer t : remainingTaskIndices) {
-    			if (shipTaskCosts[t][i] < minCost) {
-    				minCost = shipTaskCosts[t][i];
-    				minTIdx = t;
-    			}
-    		}
-    		if (minTIdx != -1)
-    			assignShipToTask(availableShips.get(i), minTIdx);
-    	}
+    	// TRAVEL_DOCK_PLANET competes with the kill tasks for the remaining ships;
+    	// one min-cost solve with the free docking spots as capacities
+    	assignRemainingShips(altRemTaskIndices);
     	Log.log("number of assignments: " + taskAssignments.size());
     }
     
@@ -636,58 +792,66 @@ public class MyBot {
     	}
     }
     
-    private void assignTravelDockingTasks(ArrayList<Integer> altTaskIndices) {
-    	// each loop assigns one ship to travel docking until no ships want to travel dock
-    	while (true) {
-	    	// remove all travel docking tasks that already have enough ships
-	    	Iterator<Integer> it = altTaskIndices.iterator();
-	    	while (it.hasNext()) {
-	    		int tIdx = it.next();
-	    		Task t = taskList.get(tIdx);
-	    		if (t.taskType == TaskType.TRAVEL_DOCK_PLANET) {
-	    			Planet p = t.planet;
-	    			if (p.getDockingSpots() <= 
-	    					p.getDockedShips().size() + numShipsAssignedToGoDock.get(p.getId())) {
-	    				it.remove();
-	    			}
-	    		}
-	    	}
-	    	
-	    	// See which ships would prefer to (shortest dist/lowest cost) TRAVEL_DOCK.
-	    	// Assign the ship with the smallest distance to actually TRAVEL_DOCK
-	    	double minShipDist = Double.MAX_VALUE;
-	    	int minSIdx = -1;
-	    	int overall_minTIdx = -1;
-	    	for (Integer sIdx : remainingShipIndices) {
-	    		double minDist = Double.MAX_VALUE;
-	    		int minTIdx = -1;
-	    		for (Integer t : altTaskIndices) {
-	    			// find the lowest cost/nearest task for the ship; store in minDist, minTIdx
-	    			if (shipTaskCosts[t][sIdx] < minDist) {
-	    				minDist = shipTaskCosts[t][sIdx];
-	    				minTIdx = t;
-	    			}
-	    		}
-	    		if (minTIdx != -1 && taskList.get(minTIdx).taskType == TaskType.TRAVEL_DOCK_PLANET) {
-	    			Ship s = availableShips.get(sIdx);
-	    			Planet p = taskList.get(minTIdx).planet;
-	    			if (!s.withinDockingRange(p)) { // prohibit ships already within docking range from travel-docking
-		    			// actually consider this sIdx, minTIdx, and minDist
-		    			if (minDist < minShipDist) {
-		    				minShipDist = minDist;
-		    				minSIdx = sIdx;
-		    				overall_minTIdx = minTIdx;
-		    			}
-	    			}
-	    		}
-	    	}
-	    	if (minSIdx != -1) {
-	    		assignShipToTask(availableShips.get(minSIdx), overall_minTIdx);
-	    		remainingShipIndices.remove(Integer.valueOf(minSIdx));
-	    	} else {
-	    		return;
-	    	}
+    // Ships still unassigned either travel to dock at a planet with spots left, or take
+    // their cheapest task among the unlimited ones (kill tasks, STILL). Ships already in
+    // docking range of a planet may not travel-dock to it.
+    private void assignRemainingShips(ArrayList<Integer> altTaskIndices) {
+    	ArrayList<Integer> dockTasks = new ArrayList<>();
+    	for (Integer t : altTaskIndices) {
+    		Task task = taskList.get(t);
+    		if (task.taskType == TaskType.TRAVEL_DOCK_PLANET && freeDockingSpots(task.planet) > 0) {
+    			dockTasks.add(t);
+    		}
+    	}
+    	int[] capacity = new int[dockTasks.size()];
+    	long[] taskKeys = new long[dockTasks.size()];
+    	for (int c = 0; c < dockTasks.size(); c++) {
+    		Planet p = taskList.get(dockTasks.get(c)).planet;
+    		capacity[c] = freeDockingSpots(p);
+    		taskKeys[c] = p.getId();
+    	}
+    	
+    	int numShips = remainingShipIndices.size();
+    	double[] fallbackCost = new double[numShips];
+    	int[] fallbackTask = new int[numShips];
+    	for (int r = 0; r < numShips; r++) {
+    		int sIdx = remainingShipIndices.get(r);
+    		fallbackCost[r] = NO_FALLBACK_COST;
+    		fallbackTask[r] = -1;
+    		for (Integer t : remainingTaskIndices) {
+    			if (shipTaskCosts[t][sIdx] < fallbackCost[r]) {
+    				fallbackCost[r] = shipTaskCosts[t][sIdx];
+    				fallbackTask[r] = t;
+    			}
+    		}
+    	}
+    	
+    	long deadline = System.nanoTime() + turnClock.remainingNanos() / 2;
+    	int[] chosen = taskSolver.solve(numShips, dockTasks.size(), (r, c) -> {
+    		int sIdx = remainingShipIndices.get(r);
+    		int t = dockTasks.get(c);
+    		if (availableShips.get(sIdx).withinDockingRange(taskList.get(t).planet)) {
+    			return Double.POSITIVE_INFINITY;
+    		}
+    		return shipTaskCosts[t][sIdx];
+    	}, capacity, taskKeys, fallbackCost, deadline);
+    	if (taskSolver.getLastPlacedRows() < numShips) {
+    		Log.log(Log.Level.WARN, "task assignment cut short: " + taskSolver.getLastPlacedRows() + "/" + numShips);
     	}
+    	
+    	for (int r = 0; r < numShips; r++) {
+    		Ship ship = availableShips.get(remainingShipIndices.get(r));
+    		if (chosen[r] != MinCostAssignment.OUTSIDE) {
+    			assignShipToTask(ship, dockTasks.get(chosen[r]));
+    		} else if (fallbackTask[r] != -1) {
+    			assignShipToTask(ship, fallbackTask[r]);
+    		}
+    	}
+    	remainingShipIndices.clear();
+    }
+    
+    private int freeDockingSpots(Planet p) {
+    	return p.getDockingSpots() - p.getDockedShips().size() - numShipsAssignedToGoDock.get(p.getId());
     }
     
     // returns ids of nearest planets
@@ -721,12 +885,19 @@ public class MyBot {
     		Task t = taskList.get(e.getKey());
 			Planet p = t.planet;
 			Ship targetShip = t.targetShip;
-    		String shipStr = "";
-    		for (Ship s : e.getValue()) shipStr += s.getId() + ", ";
-    		Log.log(t + ", ships " + shipStr);
+    		if (Log.isDebugEnabled()) {
+    			String shipStr = "";
+    			for (Ship s : e.getValue()) shipStr += s.getId() + ", ";
+    			Log.debug("%s, ships %s", t, shipStr);
+    		}
     		for (Ship ship : e.getValue()) {
     			if (p != null)
     				shipPlanetAssignments.put(ship.getId(), p.getId());
+    			int corrections = turnClock.navigationCorrections(Constants.MAX_NAVIGATION_CORRECTIONS);
+    			if (corrections == 0 && t.taskType != TaskType.DOCK_PLANET && t.taskType != TaskType.STILL) {
+    				moveList.add(cachedMove(ship));
+    				continue;
+    			}
     			switch (t.taskType) {
     			case DOCK_PLANET: 
     				moveList.add(new DockMove(ship, p)); break;
@@ -734,11 +905,11 @@ public class MyBot {
     			case RUSH_KILL_DOCKED_ENEMIES:
     			case KILL_ENEMIES_NEAR_FRIENDLY_PLANET:
     				moveList.add(
-    						Navigation.navShipToHostileShip_v3(gameMap, ship, targetShip, Constants.MAX_SPEED));
+    						Navigation.navShipToHostileShip_v3(gameMap, ship, targetShip, Constants.MAX_SPEED, corrections));
     				break;
     			case TRAVEL_DOCK_PLANET:
     				moveList.add(
-    						Navigation.navShipToDock_v2(gameMap, ship, p, Constants.MAX_SPEED));
+    						Navigation.navShipToDock_v3(gameMap, planetGraph, ship, p, Constants.MAX_SPEED, corrections));
     				break;
     			case DEFEND_NEUTRAL_PLANET:
     			case DEFEND_FRIENDLY_PLANET:
@@ -746,7 +917,7 @@ public class MyBot {
     						p, targetShip, Constants.MAX_SPEED);
     				moveList.add(Navigation.navShipTowardsTarget_v2(gameMap, 
     						ship, defPos, Constants.MAX_SPEED,
-    						true, Constants.MAX_NAVIGATION_CORRECTIONS, Math.PI/180.0));
+    						true, corrections, Math.PI/180.0));
     				break;
     			case STILL:
     				moveList.add(new ThrustMove(ship, 0, 0));
@@ -757,10 +928,54 @@ public class MyBot {
     	}
     }
     
+    // out of time: repeat whatever this ship did last turn, or hold still. dealWithCollisions is
+    // skipped by then, so a repeat that runs into something or off the map holds still instead
+    private ThrustMove cachedMove(Ship ship) {
+    	ThrustMove last = lastThrustMoves.get(ship.getId());
+    	if (last == null) return new ThrustMove(ship, 0, 0);
+    	ThrustMove again = new ThrustMove(ship, last.getAngle(), last.getThrust());
+    	Position dest = again.getFinalPos();
+    	if (dest.getXPos() < 0 || dest.getYPos() < 0 || dest.getXPos() >= gameMap.getWidth()
+    			|| dest.getYPos() >= gameMap.getHeight() || !gameMap.isPathClear(ship, dest)) {
+    		return new ThrustMove(ship, 0, 0);
+    	}
+    	return again;
+    }
+    
+    private void rememberThrustMoves() {
+    	lastThrustMoves.clear();
+    	for (Move m : moveList) {
+    		if (m instanceof ThrustMove) lastThrustMoves.put(m.getShip().getId(), (ThrustMove) m);
+    	}
+    }
+    
 //    private ThrustMove neutralPlanetDefenseMove(Ship ship, Planet p) {
 //    	
 //    }
     
+    // the ships near (x, y) fight it out for a few turns, with ship there; returns ship's index in combat
+    private int forecastFight(Ship ship, double x, double y) {
+    	gameMap.shipsWithinDistance(ship, x, y, ENGAGEMENT_RADIUS, engaged);
+    	combat.clear();
+    	int me = combat.add(OWN_TEAM, ship, x, y);
+    	addEngaged();
+    	combat.resolve(FORECAST_TURNS, Constants.MAX_SPEED);
+    	return me;
+    }
+    
+    private boolean engagedHasEnemy() {
+    	for (Ship s : engaged) {
+    		if (s.getOwner() != gameMap.getMyPlayerId()) return true;
+    	}
+    	return false;
+    }
+    
+    private void addEngaged() {
+    	for (Ship s : engaged) {
+    		combat.add(s.getOwner() == gameMap.getMyPlayerId() ? OWN_TEAM : ENEMY_TEAM, s);
+    	}
+    }
+    
     private void regroupAsNeeded() {
     	ArrayList<Ship> shipList = new ArrayList<>();
     	for (Move m : moveList) shipList.add(m.getShip());
@@ -774,174 +989,29 @@ public class MyBot {
         
         HashSet<Integer> shipNeedRetreatIds = new HashSet<>();    	
     	ArrayList<Integer> shipNeedRetreatIdx = new ArrayList<>();
-    	HashSet<Integer> waitIds = new HashSet<>();
-    	HashMap<Integer, Ship> waitIdxAndEnemyShip = new HashMap<>();
-    	PriorityQueue<EntityCost> nearestEnemyShipPicker = new PriorityQueue<>();
     	for (Integer i : thrustMoveIdx) {
     		Ship thisShip = shipList.get(i);
-    		nearestEnemyShipPicker.clear();
-//    		ArrayList<Ship> nearbyShips =
-//    				gameMap.nearbyShipsWithinDistance(shipList.get(i), 6.0);
-//    		ArrayList<Ship> nearbyShipsAtDest = 
-//    				gameMap.nearbyShipsWithinDistanceAfterThrustMove(
-//    						shipList.get(i), 7.0, (ThrustMove) moveList.get(i));
-    		ArrayList<Ship> nearbyDockedShips =
-    				gameMap.nearbyShipsWithinDistance(shipList.get(i), 6.0, 
-    						(Ship s) -> s.getDockingStatus() != DockingStatus.Undocked);
-    		ArrayList<Ship> nearbyDockedShipsAtDest = 
-    				gameMap.nearbyShipsWithinDistanceAfterThrustMove(
-    						shipList.get(i), 6.0, (ThrustMove) moveList.get(i),
-    						(Ship s) -> s.getDockingStatus() != DockingStatus.Undocked);
-    		ArrayList<Ship> nearbyUndockedFriendlyShips =
-    				gameMap.nearbyShipsWithinDistance(shipList.get(i), 6.0,
-    						(Ship s) -> s.getDockingStatus() == DockingStatus.Undocked
-    						&& s.getOwner() == gameMap.getMyPlayerId());
-    		ArrayList<Ship> nearbyUndockedEnemyShips =
-    				gameMap.nearbyShipsWithinDistance(shipList.get(i), 13.0,
-    						(Ship s) -> s.getDockingStatus() == DockingStatus.Undocked
-    						&& s.getOwner() != gameMap.getMyPlayerId());
-    		// nearby undocked ships at dest
-    		ArrayList<Ship> nearbyUndockedFriendlyShipsAtDest = 
-    				gameMap.nearbyShipsWithinDistanceAfterThrustMove(
-    						shipList.get(i), 6.0, (ThrustMove) moveList.get(i),
-    						(Ship s) -> s.getDockingStatus() == DockingStatus.Undocked
-    						&& s.getOwner() == gameMap.getMyPlayerId());
-    		ArrayList<Ship> nearbyUndockedEnemyShipsAtDest = 
-    				gameMap.nearbyShipsWithinDistanceAfterThrustMove(
-    						shipList.get(i), 13.0, (ThrustMove) moveList.get(i),
-    						(Ship s) -> s.getDockingStatus() == DockingStatus.Undocked
-    						&& s.getOwner() != gameMap.getMyPlayerId());
-    		double friendlyDocked = 0;
-    		double friendlyUndocked = 0;
-    		double enemyDocked = 0;
-    		double enemyUndocked = 0;
-    		// dest = "destination"
-    		double friendlyDockedDest = 0;
-    		double friendlyUndockedDest = 0;
-    		double enemyDockedDest = 0;
-    		double enemyUndockedDest = 0;
-    		for (Ship s : nearbyDockedShips) {
-    			boolean docking = s.getDockingStatus() == DockingStatus.Docking;
-    			double val = docking ? 0.5 : 1;
-    			if (s.getOwner() == gameMap.getMyPlayerId()) {
-    				friendlyDocked += val;
-    			} else {
-    				enemyDocked += val;
-    			}
-    		}
-    		for (Ship s : nearbyDockedShipsAtDest) {
-    			boolean docking = s.getDockingStatus() == DockingStatus.Docking;
-    			double val = docking ? 0.5 : 1;
-    			if (s.getOwner() == gameMap.getMyPlayerId()) {
-    				friendlyDockedDest += val;
-    			} else {
-    				enemyDockedDest += val;
-    				nearestEnemyShipPicker.add(new EntityCost(s, thisShip.getDistanceTo(s)));
-    			}
-    		}
-    		for (Ship s : nearbyUndockedFriendlyShips) {
-    				friendlyUndocked++;
-    		}
-    		for (Ship s : nearbyUndockedEnemyShips) {
-    				enemyUndocked++;
-    		}
-    		for (Ship s : nearbyUndockedFriendlyShipsAtDest) {
-    			friendlyUndockedDest++;
-    		}
-    		for (Ship s : nearbyUndockedEnemyShipsAtDest) {
-    				enemyUndockedDest++;
-    				nearestEnemyShipPicker.add(new EntityCost(s, 1.2*thisShip.getDistanceTo(s)));
+    		ThrustMove move = (ThrustMove) moveList.get(i);
+    		
+    		// play the local fight forward, with the ship staying here and with it at its destination;
+    		// retreat from a losing fight that would cost the ship. Holding back from a fight
+    		// that is merely close lost more games than it saved, so there is no waiting.
+    		int me = forecastFight(thisShip, thisShip.getXPos(), thisShip.getYPos());
+    		boolean survives = combat.isAlive(me);
+    		int exchange = combat.getHealthLost(ENEMY_TEAM) - combat.getHealthLost(OWN_TEAM);
+    		boolean fighting = engagedHasEnemy();
+    		Position dest = move.getFinalPos();
+    		me = forecastFight(thisShip, dest.getXPos(), dest.getYPos());
+    		boolean survivesDest = combat.isAlive(me);
+    		int exchangeDest = combat.getHealthLost(ENEMY_TEAM) - combat.getHealthLost(OWN_TEAM);
+    		if (fighting || engagedHasEnemy()) {
+    			fightingIdx.add(i);
     		}
-//    		for (Ship s : nearbyShips) {
-//    			boolean undocked = s.getDockingStatus() == DockingStatus.Undocked;
-//    			boolean docking = s.getDockingStatus() == DockingStatus.Docking;
-//    			if (s.getOwner() == gameMap.getMyPlayerId()) {
-//    				if (undocked) friendlyUndocked++;
-//    				else if (docking) friendlyDocked += 0.5;
-//    				else friendlyDocked++;
-//    			} else {
-//    				if (undocked) enemyUndocked++;
-//    				else if (docking) enemyDocked += 0.5;
-//    				else enemyDocked++;
-//    			}
-//    		}
-//    		for (Ship s : nearbyShipsAtDest) {
-//    			boolean undocked = s.getDockingStatus() == DockingStatus.Undocked;
-//    			boolean docking = s.getDockingStatus() == DockingStatus.Docking;
-//    			if (s.getOwner() == gameMap.getMyPlayerId()) {
-//    				if (undocked) friendlyUndockedDest++;
-//    				else if (docking) friendlyDockedDest += 0.5;
-//    				else friendlyDockedDest++;
-//    			} else {
-//    				double cost = shipList.get(i).getDistanceTo(s);
-//    				if (undocked) {
-//    					enemyUndockedDest++;
-//    				}
-//    				else if (docking) {
-//    					enemyDockedDest += 0.5;
-//    					cost *= 1.4;
-//    				}
-//    				else {
-//    					enemyDockedDest++;
-//    					cost *= 1.2;
-//    				}
-//    				nearestEnemyShipPicker.add(new EntityCost(s, cost));
-//    				
-//    			}
-//    		}
-    		double safety = 1.0*friendlyUndocked + 0.4*friendlyDocked 
-    				- 0.95*enemyUndocked - 0.4*enemyDocked;
-    		double safetyDest = 0.7*(1.0*friendlyUndocked + 0.4*friendlyDocked)
-    				+ 0.3*(1.0*friendlyUndockedDest + 0.4*friendlyDockedDest)
-    				- 0.9*enemyUndockedDest - 0.3*enemyDockedDest;
-    		double ownCount = (shipList.get(i).getHealth() > 230) ? 0.99 : 0.6 + 0.3 * shipList.get(i).getHealth() / 255.0;
-    		safety += ownCount;
-    		safetyDest += ownCount;
     		
-    		if (safety < 0 || safetyDest < -1) {
-    			shipNeedRetreatIds.add(shipList.get(i).getId());
+    		if ((!survives && exchange < RETREAT_EXCHANGE_HERE) || (!survivesDest && exchangeDest < RETREAT_EXCHANGE_DEST)) {
+    			Log.debug("retreating: ship %d exchange %d, at destination %d", thisShip.getId(), exchange, exchangeDest);
+    			shipNeedRetreatIds.add(thisShip.getId());
     			shipNeedRetreatIdx.add(i);
-    		} else if (safetyDest < 0.59) {
-    			Log.log("waiting: ship " + shipList.get(i).getId() 
-    					+ " safety " + safety + " safetydest " + safetyDest + " " + nearestEnemyShipPicker.toString());
-    			waitIds.add(shipList.get(i).getId());
-    			waitIdxAndEnemyShip.put(i, (Ship) nearestEnemyShipPicker.poll().entity);
-    		}
-    	}
-    	
-    	for (Entry<Integer, Ship> ee : waitIdxAndEnemyShip.entrySet()) {
-    		int shipListIdx = ee.getKey();
-    		Ship s = shipList.get(shipListIdx);
-    		Ship enemyShip = ee.getValue();
-    		if (enemyShip == null) {
-    			ThrustMove oldMove = (ThrustMove) moveList.get(shipListIdx);
-    			moveList.set(shipListIdx, new ThrustMove(oldMove.getShip(), oldMove.getAngle(), Math.min(2, oldMove.getThrust())));
-    			Log.log("Ship " + s.getId() + " is slowing down/waiting with null enemy");
-    		} else {
-        		PriorityQueue<EntityCost> retreatTargets = new PriorityQueue<>();
-            	for (Ship retreatTarget : gameMap.getMyPlayer().getShips().values()) {
-            		if (!shipNeedRetreatIds.contains(retreatTarget.getId())
-            				&& !waitIds.contains(retreatTarget.getId())) {
-            			double cost = s.getDistanceTo(retreatTarget);
-            			if (retreatTarget.getDockingStatus() != DockingStatus.Undocked)
-            				cost *= 3;
-            			retreatTargets.add(new EntityCost(retreatTarget, cost));
-            		}
-            	}
-            	EntityCost e = retreatTargets.poll();
-            	if (e != null) {
-    				// figure out wait point using es and e
-            		Ship retreatTarget = (Ship) e.entity;
-            		Position waitPoint = Navigation.waitPoint(gameMap, retreatTarget, enemyShip, 5);
-            		// go to wait point
-    				moveList.set(shipListIdx, Navigation.navShipTowardsTarget_v2(gameMap, 
-    						s, waitPoint, Constants.MAX_SPEED,
-    						true, Constants.MAX_NAVIGATION_CORRECTIONS, Math.PI/180.0));
-            		
-    				Log.log("Ship " + s.getId() + " is going to wait, retreat target: ship " + e.entity.getId());
-            	} else {
-            		Log.log("Ship " + s.getId() + " failed to wait");
-            	}
     		}
     	}
     	
@@ -961,9 +1031,9 @@ public class MyBot {
         	if (e != null) {
 				moveList.set(i, Navigation.navShipToDock_v2(gameMap,
 						s, e.entity, Constants.MAX_SPEED));
-				Log.log("Ship " + s.getId() + " is retreating towards ship " + e.entity.getId());
+				Log.debug("Ship %d is retreating towards ship %d", s.getId(), e.entity.getId());
         	} else {
-        		Log.log("Ship " + s.getId() + " failed to retreat");
+        		Log.debug("Ship %d failed to retreat", s.getId());
         	}
     	}
     	
@@ -1030,48 +1100,19 @@ public class MyBot {
         // detect collisions
         ArrayList<ArrayList<Integer>> collisionGroups = new ArrayList<>();
         ArrayList<Integer> thrustMoveIdx = new ArrayList<>();
-        ArrayList<Position> initialPositions = new ArrayList<>();
-        ArrayList<Position> finalPositions = new ArrayList<>();
     	// Things are messy here.  We have thrustMove indices and moveList indices.
+        moveGroups.clear();
         for (int i = 0; i < moveList.size(); i++) {
         	Move m = moveList.get(i);
         	if (m instanceof ThrustMove) {
         		thrustMoveIdx.add(i);
-        		double xi = m.getShip().getXPos();
-        		double yi = m.getShip().getYPos();
-        		double xf = xi + ((ThrustMove) m).getdX();
-        		double yf = yi + ((ThrustMove) m).getdY();
-        		initialPositions.add(new Position(xi, yi));
-        		finalPositions.add(new Position(xf, yf));
+        		moveGroups.add(m.getShip().getId(), m.getShip().getXPos(), m.getShip().getYPos(),
+        				((ThrustMove) m).getdX(), ((ThrustMove) m).getdY());
         	}
         }
 
-            DisjointSet collisionSets = DisjointSet.makeSingletons(thrustMoveIdx.size());
-            for (int i = 0; i < thrustMoveIdx.size(); i++) {
-            	for (int j = i+1; j < thrustMoveIdx.size(); j++) {
-            		if (collisionSets.find(i) != collisionSets.find(j)) {
-            			int m = thrustMoveIdx.get(i);
-            			int n = thrustMoveIdx.get(j);
-            			if (Collision.twoShipCollide(shipList.get(m), (ThrustMove) moveList.get(m),
-            					shipList.get(n), (ThrustMove) moveList.get(n))) {
-            				Log.log(String.format("ships %d and %d may collide", 
-            						shipList.get(m).getId(), i, m,
-            						shipList.get(n).getId(), j, n));
-            				collisionSets.union(i, j);
-            			} else if (initialPositions.get(i).getDistanceTo(initialPositions.get(j)) < 4.0) {
-            				Log.log(String.format("ships %d and %d start near each other", 
-            						shipList.get(m).getId(), i, m,
-            						shipList.get(n).getId(), j, n));
-            				collisionSets.union(i, j);
-            			} else if (finalPositions.get(i).getDistanceTo(finalPositions.get(j)) < 4.0) {
-            				Log.log(String.format("ships %d and %d end near each other", 
-            						shipList.get(m).getId(), i, m,
-            						shipList.get(n).getId(), j, n));
-            				collisionSets.union(i, j);
-            			}
-            		}
-            	}
-            }
+            // linked if they may collide, or start or end within 4 of each other
+            DisjointSet collisionSets = moveGroups.group(4.0);
             
             HashSet<Integer> parents = new HashSet<>(); // find the non-singleton sets in the disjoint set
             for (int i = 0; i < thrustMoveIdx.size(); i++) {
@@ -1097,24 +1138,231 @@ public class MyBot {
 //        	Log.log(collisionGroups.toString());
 //        }
         
-        // fix collisions (this is kind of hacky)
+        // moves of the ships outside each group, which that group has to steer around
+        HashMap<Integer, ThrustMove> plannedMoves = new HashMap<>();
+        for (int i : thrustMoveIdx) {
+        	plannedMoves.put(shipList.get(i).getId(), (ThrustMove) moveList.get(i));
+        }
+        
+        // fix collisions
+        ArrayList<ArrayList<Integer>> searchedGroups = new ArrayList<>();
+        ArrayList<ArrayList<ThrustMove>> searchedPlans = new ArrayList<>();
+        ArrayList<ArrayList<Ship>> groupShips = new ArrayList<>();
         for (ArrayList<Integer> cg : collisionGroups) {
         	if (cg.size() >= 2) {
-            	Log.log(cg.toString());
-            	ArrayList<Move> revisedMoves = new ArrayList<>();
+            	Log.debug("%s", cg);
             	ArrayList<ThrustMove> cMoves = new ArrayList<>();
             	ArrayList<Ship> cShipList = new ArrayList<>();
             	for (Integer i : cg) {
-            		Log.log(moveList.get(i).toString());
+            		Log.debug("%s", moveList.get(i));
             		cMoves.add((ThrustMove) moveList.get(i));
             		cShipList.add(shipList.get(i));
             	}
-            	Log.log(cg.toString());
-            	revisedMoves = Navigation.reviseMovesCollision_v2(gameMap, cMoves, cShipList);
-            	for (int i = 0; i < cg.size(); i++) {
-                	moveList.set(cg.get(i), revisedMoves.get(i));
-                }
+            	searchedGroups.add(cg);
+            	searchedPlans.add(cMoves);
+            	groupShips.add(cShipList);
         	}
-        }        
+        }
+        
+        // every group is solved at once against everyone's moves as planned, which no worker writes to
+        final Map<Integer, ThrustMove> snapshot = new HashMap<>(plannedMoves);
+        final ArrayList<ArrayList<Move>> revised = new ArrayList<>(Collections.nCopies(searchedGroups.size(), null));
+        if (!turnClock.pastHardDeadline()) {
+        	Parallel.forEach(searchedGroups.size(), 2, k ->
+        		revised.set(k, Navigation.reviseMovesOrca(gameMap, searchedPlans.get(k), groupShips.get(k), snapshot)));
+        }
+        
+        // merged in group order, so the result doesn't depend on which worker finished first
+        final ArrayList<Move> plans = new ArrayList<>(moveList);
+        int outOfTime = 0;
+        for (int k = 0; k < searchedGroups.size(); k++) {
+        	ArrayList<Move> revisedMoves = revised.get(k);
+        	if (revisedMoves == null) {
+        		outOfTime++;
+        		continue;
+        	}
+        	ArrayList<Integer> cg = searchedGroups.get(k);
+        	for (int i = 0; i < cg.size(); i++) {
+        		moveList.set(cg.get(i), revisedMoves.get(i));
+        		plannedMoves.put(shipList.get(cg.get(i)).getId(), (ThrustMove) revisedMoves.get(i));
+        	}
+        }
+        if (outOfTime > 0) {
+        	Log.log("out of time; leaving " + outOfTime + " collision groups as they are");
+        }
+        
+        // groups solved apart can still meet: two that steered into each other, or a ship stopped in
+        // the way of another group's
+        resolveRemainingCollisions(thrustMoveIdx, plans, shipList, plannedMoves);
+        
+        turnClock.beginStage("moveSearch");
+        addFightingShips(searchedGroups, searchedPlans);
+        searchMoves(searchedGroups, searchedPlans, shipList, plannedMoves);
+    }
+    
+    /*
+     * Puts the ships in a fight into the groups to search, where the search
+     * plays the fight out. Fighting ships within ENGAGEMENT_RADIUS of each
+     * other are in the same fight, so they go in one group, together with the
+     * collision groups any of them is in. A fighting ship in no collision
+     * group plans its current move.
+     */
+    private void addFightingShips(ArrayList<ArrayList<Integer>> groups, ArrayList<ArrayList<ThrustMove>> plans) {
+    	if (fightingIdx.isEmpty()) {
+    		return;
+    	}
+    	DisjointSet sets = DisjointSet.makeSingletons(moveList.size());
+    	ThrustMove[] planOf = new ThrustMove[moveList.size()];
+    	for (int g = 0; g < groups.size(); g++) {
+    		ArrayList<Integer> cg = groups.get(g);
+    		for (int k = 0; k < cg.size(); k++) {
+    			sets.union(cg.get(0), cg.get(k));
+    			planOf[cg.get(k)] = plans.get(g).get(k);
+    		}
+    	}
+    	for (int a = 0; a < fightingIdx.size(); a++) {
+    		int i = fightingIdx.get(a);
+    		if (planOf[i] == null) planOf[i] = (ThrustMove) moveList.get(i);
+    		for (int b = a + 1; b < fightingIdx.size(); b++) {
+    			int j = fightingIdx.get(b);
+    			if (moveList.get(i).getShip().getDistanceTo(moveList.get(j).getShip()) < ENGAGEMENT_RADIUS) {
+    				sets.union(i, j);
+    			}
+    		}
+    	}
+    	LinkedHashMap<Integer, ArrayList<Integer>> merged = new LinkedHashMap<>();
+    	for (int i = 0; i < moveList.size(); i++) {
+    		if (planOf[i] != null) {
+    			merged.computeIfAbsent(sets.find(i), r -> new ArrayList<>()).add(i);
+    		}
+    	}
+    	groups.clear();
+    	plans.clear();
+    	for (ArrayList<Integer> group : merged.values()) {
+    		ArrayList<ThrustMove> groupPlans = new ArrayList<>();
+    		for (int i : group) groupPlans.add(planOf[i]);
+    		groups.add(group);
+    		plans.add(groupPlans);
+    	}
+    }
+    
+    // passes over whatever still collides; a solved set can push into a neighbour, which the next pass takes in
+    private static final int MAX_COLLISION_PASSES = 4;
+    
+    /*
+     * Solves each set of ships whose moves collide as one group, from the
+     * plans, and repeats until nothing collides. Ships solved together once
+     * stay together, so a set that collides again is solved with everything
+     * it has run into so far rather than going back and forth.
+     */
+    private void resolveRemainingCollisions(ArrayList<Integer> thrustMoveIdx, ArrayList<Move> plans,
+    		ArrayList<Ship> shipList, HashMap<Integer, ThrustMove> plannedMoves) {
+    	final int n = thrustMoveIdx.size();
+    	DisjointSet together = DisjointSet.makeSingletons(n);
+    	for (int pass = 0; pass < MAX_COLLISION_PASSES; pass++) {
+    		if (turnClock.pastHardDeadline()) {
+    			return;
+    		}
+    		moveGroups.clear();
+    		for (int i : thrustMoveIdx) {
+    			ThrustMove m = (ThrustMove) moveList.get(i);
+    			moveGroups.add(m.getShip().getId(), m.getShip().getXPos(), m.getShip().getYPos(), m.getdX(), m.getdY());
+    		}
+    		DisjointSet collided = moveGroups.group(0);
+    		boolean any = false;
+    		for (int j = 0; j < n; j++) {
+    			if (collided.find(j) != j) {
+    				together.union(j, collided.find(j));
+    				any = true;
+    			}
+    		}
+    		if (!any) {
+    			return;
+    		}
+    		// whole sets of ships solved together, for each set that has a collision in it now
+    		boolean[] colliding = new boolean[n];
+    		for (int j = 0; j < n; j++) {
+    			if (collided.find(j) != j) {
+    				colliding[together.find(j)] = true;
+    			}
+    		}
+    		LinkedHashMap<Integer, ArrayList<Integer>> sets = new LinkedHashMap<>();
+    		for (int j = 0; j < n; j++) {
+    			if (colliding[together.find(j)]) {
+    				sets.computeIfAbsent(together.find(j), r -> new ArrayList<>()).add(thrustMoveIdx.get(j));
+    			}
+    		}
+    		for (ArrayList<Integer> cg : sets.values()) {
+    			solveAgain(cg, plans, shipList, plannedMoves, pass);
+    		}
+    	}
+    	Log.debug("stopped re-solving collisions after %d passes", MAX_COLLISION_PASSES);
+    }
+    
+    private void solveAgain(ArrayList<Integer> cg, ArrayList<Move> plans, ArrayList<Ship> shipList,
+    		HashMap<Integer, ThrustMove> plannedMoves, int pass) {
+    	Log.debug("still colliding after the merge, pass %d: %s", pass, cg);
+    	ArrayList<ThrustMove> cMoves = new ArrayList<>();
+    	ArrayList<Ship> cShipList = new ArrayList<>();
+    	for (Integer i : cg) {
+    		cMoves.add((ThrustMove) plans.get(i));
+    		cShipList.add(shipList.get(i));
+    	}
+    	ArrayList<Move> revisedMoves = Navigation.reviseMovesOrca(gameMap, cMoves, cShipList, plannedMoves);
+    	for (int i = 0; i < cg.size(); i++) {
+    		moveList.set(cg.get(i), revisedMoves.get(i));
+    		plannedMoves.put(cShipList.get(i).getId(), (ThrustMove) revisedMoves.get(i));
+    	}
+    }
+    
+    // time for improving on ORCA's moves, shared by all groups since they are searched at once
+    private static final long MOVE_SEARCH_NANOS = 30_000_000L;
+    
+    /*
+     * Runs the groups' searches side by side until they finish or the budget
+     * runs out, then takes each group's best moves in group order. A group
+     * whose best moves would now hit ships that an earlier group's search
+     * moved keeps ORCA's moves.
+     */
+    private void searchMoves(ArrayList<ArrayList<Integer>> groups, ArrayList<ArrayList<ThrustMove>> plans,
+    		ArrayList<Ship> shipList, HashMap<Integer, ThrustMove> plannedMoves) {
+    	if (groups.isEmpty() || turnClock.pastSoftDeadline()) {
+    		return;
+    	}
+    	// set up once every group has its ORCA moves, which are what the others steer around
+    	ArrayList<MoveSearch> searches = new ArrayList<>();
+    	for (int g = 0; g < groups.size(); g++) {
+    		ArrayList<Move> start = new ArrayList<>();
+    		ArrayList<Ship> cShipList = new ArrayList<>();
+    		for (Integer i : groups.get(g)) {
+    			start.add(moveList.get(i));
+    			cShipList.add(shipList.get(i));
+    		}
+    		searches.add(new MoveSearch(gameMap, plans.get(g), start, cShipList, plannedMoves));
+    	}
+    	final long budget = Math.min(MOVE_SEARCH_NANOS, TurnClock.SOFT_BUDGET_NANOS - turnClock.elapsedNanos());
+    	final long deadline = System.nanoTime() + budget;
+    	Parallel.forEach(searches.size(), 2, k -> searches.get(k).run(deadline));
+    	
+    	int changed = 0, rejected = 0;
+    	for (int g = 0; g < searches.size(); g++) {
+    		MoveSearch search = searches.get(g);
+    		if (!search.isClearOf(plannedMoves)) {
+    			rejected++;
+    			continue;
+    		}
+    		ArrayList<Move> best = search.getBest();
+    		ArrayList<Integer> cg = groups.get(g);
+    		for (int i = 0; i < cg.size(); i++) {
+    			ThrustMove before = (ThrustMove) moveList.get(cg.get(i));
+    			ThrustMove after = (ThrustMove) best.get(i);
+    			if (before.getThrust() != after.getThrust() || after.getThrust() > 0 && before.getAngle() != after.getAngle()) {
+    				changed++;
+    			}
+    			moveList.set(cg.get(i), best.get(i));
+    			plannedMoves.put(best.get(i).getShip().getId(), (ThrustMove) best.get(i));
+    		}
+    	}
+    	Log.debug("move search: %d groups, %d moves changed, %d groups kept ORCA's", searches.size(), changed, rejected);
     }
 }
@@ -0,0 +1,375 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import hlt2.Collision;
+import hlt2.CombatResolver;
+import hlt2.Constants;
+import hlt2.Entity;
+import hlt2.GameMap;
+import hlt2.Metadata;
+import hlt2.MoveGroups;
+import hlt2.Navigation;
+import hlt2.Planet;
+import hlt2.Position;
+import hlt2.SegmentHit;
+import hlt2.Ship;
+import hlt2.Simulator;
+import hlt2.ThrustMove;
+
+/**
+ * Microbenchmarks for the navigation and collision hot paths, run on seeded
+ * synthetic maps of 50, 200 and 800 ships so numbers are comparable between runs.
+ * Each case warms up first, then runs several timed iterations; results are
+ * reported as mean ns/op with the spread across iterations.
+ *
+ * Usage: java NavigationBenchmark [name filter] [ship counts...]
+ *   -Dbench.frames=FILE    also run on recorded states: first line "width height playerId",
+ *                          then one engine frame per line
+ *   -Dbench.warmupMs=N, -Dbench.measureMs=N, -Dbench.iterations=N
+ */
+public class NavigationBenchmark {
+
+	private static final long SEED = 20180115L;
+	private static final int INPUTS = 4096; // precomputed arguments each case cycles through
+
+	private static final long WARMUP_MS = Long.getLong("bench.warmupMs", 1000);
+	private static final long MEASURE_MS = Long.getLong("bench.measureMs", 500);
+	private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+
+	// results are folded in here so the JIT can't drop the work
+	static volatile long sink;
+
+	public static void main(final String[] args) throws IOException {
+		final String filter = args.length > 0 ? args[0] : "";
+		final List<Integer> shipCounts = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			shipCounts.add(Integer.parseInt(args[i]));
+		}
+		if (shipCounts.isEmpty()) {
+			shipCounts.add(50);
+			shipCounts.add(200);
+			shipCounts.add(800);
+		}
+
+		System.out.println(String.format("%-40s %-10s %5s %12s %10s  %s",
+				"Benchmark", "map", "Cnt", "Score", "Error", "Units"));
+		for (final int ships : shipCounts) {
+			run(filter, "synth" + ships, syntheticMap(ships));
+		}
+
+		final String frames = System.getProperty("bench.frames");
+		if (frames != null) {
+			int k = 0;
+			for (final GameMap map : recordedMaps(frames)) {
+				run(filter, "frame" + (k++), map);
+			}
+		}
+	}
+
+	/**
+	 * A generated planet layout with shipCount undocked ships scattered over it,
+	 * alternating between two players, none overlapping a planet or another ship.
+	 */
+	static GameMap syntheticMap(final int shipCount) {
+		final int width = shipCount <= 50 ? 288 : shipCount <= 200 ? 336 : 384;
+		final int height = width * 2 / 3;
+		final Simulator sim = Simulator.generate(SEED, width, height, 2);
+		final GameMap planetsOnly = sim.toGameMap(0);
+		final Random rnd = new Random(SEED + shipCount);
+		final ArrayList<Position> placed = new ArrayList<>();
+		for (Ship s : planetsOnly.getAllShips()) {
+			placed.add(s);
+		}
+
+		int owner = 0;
+		int attempts = 0;
+		while (placed.size() < shipCount && attempts++ < 100 * shipCount) {
+			final Position p = new Position(1 + rnd.nextDouble() * (width - 2), 1 + rnd.nextDouble() * (height - 2));
+			boolean free = true;
+			for (Planet planet : planetsOnly.getAllPlanets().values()) {
+				if (p.getDistanceTo(planet) < planet.getRadius() + 2) free = false;
+			}
+			for (Position other : placed) {
+				if (p.getDistanceTo(other) < 2 * Constants.SHIP_RADIUS + 0.2) free = false;
+			}
+			if (!free) continue;
+			sim.addShip(owner, p.getXPos(), p.getYPos());
+			placed.add(p);
+			owner = 1 - owner;
+		}
+		return withStillShips(sim.toGameMap(0));
+	}
+
+	static List<GameMap> recordedMaps(final String path) throws IOException {
+		final List<GameMap> maps = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+			final Metadata header = new Metadata(in.readLine());
+			final int width = header.popInt();
+			final int height = header.popInt();
+			final int playerId = header.popInt();
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().isEmpty()) continue;
+				maps.add(withStillShips(new GameMap(width, height, playerId).updateMap(new Metadata(line))));
+			}
+		}
+		return maps;
+	}
+
+	// stationaryObjectsBetween2 needs the bot's still-ship list; use every third own ship
+	private static GameMap withStillShips(final GameMap map) {
+		final ArrayList<Ship> still = new ArrayList<>();
+		int k = 0;
+		for (Ship s : map.getMyPlayer().getShips().values()) {
+			if (k++ % 3 == 0) still.add(s);
+		}
+		map.setMyStillShips(still);
+		return map;
+	}
+
+	private static void run(final String filter, final String label, final GameMap map) {
+		final Inputs in = new Inputs(map, new Random(SEED));
+		final int maxCorr = Constants.MAX_NAVIGATION_CORRECTIONS;
+		final double step = Math.PI / 180.0;
+
+		bench(filter, label, INPUTS, "Collision.segmentCircleIntersect", () -> {
+			long hits = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				if (Collision.segmentCircleIntersect(in.ships[i], in.targets[i], in.obstacles[i], Constants.SHIP_RADIUS)) hits++;
+			}
+			return hits;
+		});
+		bench(filter, label, INPUTS, "Collision.twoShipCollide", () -> {
+			long hits = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				if (Collision.twoShipCollide(in.ships[i], in.moves[i], in.neighbours[i], in.neighbourMoves[i])) hits++;
+			}
+			return hits;
+		});
+		bench(filter, label, INPUTS, "GameMap.objectsBetween", () -> {
+			long found = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				found += map.objectsBetween(in.ships[i], in.targets[i]).size();
+			}
+			return found;
+		});
+		bench(filter, label, INPUTS, "GameMap.stationaryObjectsBetween2", () -> {
+			long found = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				found += map.stationaryObjectsBetween2(in.ships[i], in.targets[i]).size();
+			}
+			return found;
+		});
+		bench(filter, label, INPUTS, "GameMap.isPathClear", () -> {
+			long clear = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				if (map.isPathClear(in.ships[i], in.targets[i])) clear++;
+			}
+			return clear;
+		});
+		bench(filter, label, INPUTS, "GameMap.isStationaryPathClear2", () -> {
+			long clear = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				if (map.isStationaryPathClear2(in.ships[i], in.targets[i])) clear++;
+			}
+			return clear;
+		});
+		final SegmentHit hit = new SegmentHit();
+		bench(filter, label, INPUTS, "GameMap.firstObjectBetween", () -> {
+			long acc = 0;
+			for (int i = 0; i < INPUTS; i++) {
+				if (map.firstObjectBetween(in.ships[i], in.targets[i], hit)) acc += hit.getEntity().getId();
+			}
+			return acc;
+		});
+		// navigation is orders of magnitude slower per call; use a slice of the inputs
+		bench(filter, label, INPUTS / 16, "Navigation.navShipTowardsTarget", () -> {
+			long acc = 0;
+			for (int i = 0; i < INPUTS / 16; i++) {
+				acc += Navigation.navShipTowardsTarget(map, in.ships[i], in.targets[i],
+						Constants.MAX_SPEED, true, maxCorr, step).getAngle();
+			}
+			return acc;
+		});
+		bench(filter, label, INPUTS / 16, "Navigation.navShipTowardsTarget_stat", () -> {
+			long acc = 0;
+			for (int i = 0; i < INPUTS / 16; i++) {
+				acc += Navigation.navShipTowardsTarget(map, in.ships[i], in.targets[i],
+						Constants.MAX_SPEED, true, maxCorr, step, true).getAngle();
+			}
+			return acc;
+		});
+		bench(filter, label, INPUTS / 16, "Navigation.navShipTowardsTarget_fn", () -> {
+			long acc = 0;
+			for (int i = 0; i < INPUTS / 16; i++) {
+				acc += Navigation.navShipTowardsTarget(map, in.ships[i], in.targets[i],
+						Constants.MAX_SPEED, maxCorr, step, map::isPathClear).getAngle();
+			}
+			return acc;
+		});
+		// only the queries whose direct heading is blocked, where the heading search does its work
+		final int blocked = Math.min(INPUTS / 16, in.blockedShips.size());
+		bench(filter, label, blocked, "Navigation.navShipTowardsTarget_blk", () -> {
+			long acc = 0;
+			for (int i = 0; i < blocked; i++) {
+				acc += Navigation.navShipTowardsTarget(map, in.blockedShips.get(i), in.blockedTargets.get(i),
+						Constants.MAX_SPEED, true, maxCorr, step).getAngle();
+			}
+			return acc;
+		});
+		bench(filter, label, blocked, "Navigation.navShipTowardsTarget_fn_blk", () -> {
+			long acc = 0;
+			for (int i = 0; i < blocked; i++) {
+				acc += Navigation.navShipTowardsTarget(map, in.blockedShips.get(i), in.blockedTargets.get(i),
+						Constants.MAX_SPEED, maxCorr, step, map::isPathClear).getAngle();
+			}
+			return acc;
+		});
+		bench(filter, label, INPUTS / 16, "Navigation.navShipTowardsTarget_v2", () -> {
+			long acc = 0;
+			for (int i = 0; i < INPUTS / 16; i++) {
+				acc += Navigation.navShipTowardsTarget_v2(map, in.ships[i], in.targets[i],
+						Constants.MAX_SPEED, true, maxCorr, step).getAngle();
+			}
+			return acc;
+		});
+		// grouping every own ship's move, as the bot does each turn; the first scales with near pairs, the second with all pairs
+		bench(filter, label, 1, "MoveGroups.group", () -> in.allMoves.group(4.0).find(0));
+		bench(filter, label, 1, "MoveGroups.groupAllPairs", () -> in.allMoves.groupAllPairs(4.0).find(0));
+		// a two-turn forecast of the fight around a ship, as regroupAsNeeded runs for every moving ship
+		final CombatResolver combat = new CombatResolver();
+		bench(filter, label, INPUTS / 16, "CombatResolver.resolve", () -> {
+			long acc = 0;
+			for (int i = 0; i < INPUTS / 16; i++) {
+				combat.clear();
+				final int me = combat.add(0, in.ships[i]);
+				for (Ship s : in.engaged.get(i)) {
+					combat.add(s.getOwner() == in.ships[i].getOwner() ? 0 : 1, s);
+				}
+				combat.resolve(2, Constants.MAX_SPEED);
+				acc += combat.getHealth(me);
+			}
+			return acc;
+		});
+		bench(filter, label, in.groupShips.size(), "Navigation.reviseMovesCollision_v2", () -> {
+			long acc = 0;
+			for (int g = 0; g < in.groupShips.size(); g++) {
+				acc += Navigation.reviseMovesCollision_v2(map, in.groupMoves.get(g), in.groupShips.get(g)).size();
+			}
+			return acc;
+		});
+	}
+
+	/** Seeded arguments for every case, drawn from one map. */
+	static class Inputs {
+		final Ship[] ships = new Ship[INPUTS];
+		final Position[] targets = new Position[INPUTS];
+		final Entity[] obstacles = new Entity[INPUTS];
+		final ThrustMove[] moves = new ThrustMove[INPUTS];
+		final Ship[] neighbours = new Ship[INPUTS];
+		final ThrustMove[] neighbourMoves = new ThrustMove[INPUTS];
+		final List<ArrayList<Ship>> groupShips = new ArrayList<>();
+		final List<ArrayList<ThrustMove>> groupMoves = new ArrayList<>();
+		final MoveGroups allMoves = new MoveGroups();
+		final List<ArrayList<Ship>> engaged = new ArrayList<>();
+		final List<Ship> blockedShips = new ArrayList<>();
+		final List<Position> blockedTargets = new ArrayList<>();
+
+		Inputs(final GameMap map, final Random rnd) {
+			final List<Ship> all = map.getAllShips();
+			final List<Ship> mine = new ArrayList<>(map.getMyPlayer().getShips().values());
+			final List<Planet> planets = new ArrayList<>(map.getAllPlanets().values());
+			final List<Entity> entities = new ArrayList<>(all);
+			entities.addAll(planets);
+
+			for (int i = 0; i < INPUTS; i++) {
+				final Ship ship = mine.get(rnd.nextInt(mine.size()));
+				ships[i] = ship;
+				// half toward a docking point, half toward a ship, like the bot's tasks
+				if (rnd.nextBoolean() && !planets.isEmpty()) {
+					targets[i] = ship.getClosestPoint(planets.get(rnd.nextInt(planets.size())));
+				} else {
+					targets[i] = ship.getClosestPoint(all.get(rnd.nextInt(all.size())));
+				}
+				obstacles[i] = entities.get(rnd.nextInt(entities.size()));
+				moves[i] = randomMove(ship, rnd);
+				final ArrayList<Ship> near = map.nearbyShipsWithinDistance(ship, 2 * Constants.MAX_SPEED + 1);
+				near.remove(ship);
+				neighbours[i] = near.isEmpty() ? all.get(rnd.nextInt(all.size())) : near.get(rnd.nextInt(near.size()));
+				neighbourMoves[i] = randomMove(neighbours[i], rnd);
+				if (i < INPUTS / 16) {
+					engaged.add(map.nearbyShipsWithinDistance(ship, CombatResolver.FIRING_RANGE + 2 * Constants.MAX_SPEED));
+				}
+				if (!map.isPathClear(ship, targets[i])) {
+					blockedShips.add(ship);
+					blockedTargets.add(targets[i]);
+				}
+			}
+
+			for (Ship s : mine) {
+				final ThrustMove m = randomMove(s, rnd);
+				allMoves.add(s.getId(), s.getXPos(), s.getYPos(), m.getdX(), m.getdY());
+			}
+
+			// collision groups: an own ship plus own ships close enough to run into it
+			for (int g = 0; g < Math.min(64, mine.size()); g++) {
+				final Ship seed = mine.get(rnd.nextInt(mine.size()));
+				final ArrayList<Ship> group = new ArrayList<>();
+				final ArrayList<ThrustMove> groupMove = new ArrayList<>();
+				for (Ship s : map.nearbyShipsWithinDistance(seed, 2 * Constants.MAX_SPEED + 2 * Constants.SHIP_RADIUS)) {
+					if (s.getOwner() == map.getMyPlayerId() && group.size() < 8) {
+						group.add(s);
+						groupMove.add(randomMove(s, rnd));
+					}
+				}
+				if (group.size() >= 2) {
+					groupShips.add(group);
+					groupMoves.add(groupMove);
+				}
+			}
+		}
+
+		private static ThrustMove randomMove(final Ship ship, final Random rnd) {
+			return new ThrustMove(ship, rnd.nextInt(360), rnd.nextInt(Constants.MAX_SPEED + 1));
+		}
+	}
+
+	private static void bench(final String filter, final String label, final int callsPerOp,
+			final String name, final LongSupplier op) {
+		if (!name.contains(filter) || callsPerOp == 0) {
+			return;
+		}
+		final long warmupEnd = System.nanoTime() + WARMUP_MS * 1_000_000L;
+		while (System.nanoTime() < warmupEnd) {
+			sink += op.getAsLong();
+		}
+
+		final double[] nsPerCall = new double[ITERATIONS];
+		for (int it = 0; it < ITERATIONS; it++) {
+			long ops = 0;
+			final long start = System.nanoTime();
+			final long end = start + MEASURE_MS * 1_000_000L;
+			long now;
+			do {
+				sink += op.getAsLong();
+				ops++;
+			} while ((now = System.nanoTime()) < end);
+			nsPerCall[it] = (double) (now - start) / (ops * callsPerOp);
+		}
+
+		double mean = 0;
+		for (double v : nsPerCall) mean += v;
+		mean /= ITERATIONS;
+		double var = 0;
+		for (double v : nsPerCall) var += (v - mean) * (v - mean);
+		final double err = ITERATIONS > 1 ? Math.sqrt(var / (ITERATIONS - 1)) : 0;
+		System.out.println(String.format(Locale.ROOT, "%-40s %-10s %5d %12.1f %10.1f  ns/op",
+				name, label, ITERATIONS, mean, err));
+	}
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import hlt2.Bot;
+import hlt2.Networking;
+import hlt2.ReplayEngineIO;
+
+/**
+ * Re-runs a recorded game (see -Dhlt.record) through a bot with no engine
+ * attached. Every turn's moves are checked against the recording, so a change
+ * that was meant to be a pure speedup can be shown to produce the same moves;
+ * the per-turn times give a fixed workload for profiling slow turns.
+ *
+ * Usage: java ReplayDriver FILE.replay [MyBot|MatrixBot8b] [repeats]
+ *
+ * Turns that hit the TurnClock deadlines in the recorded game may legitimately
+ * differ when replayed on a faster or slower machine.
+ */
+public class ReplayDriver {
+
+	private static final int MISMATCHES_SHOWN = 10;
+	private static final int SLOWEST_SHOWN = 5;
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: java ReplayDriver FILE.replay [MyBot|MatrixBot8b] [repeats]");
+			System.exit(2);
+		}
+		final String path = args[0];
+		final String botClass = args.length > 1 ? args[1] : "MyBot";
+		final int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+		boolean allMatched = true;
+		for (int r = 0; r < repeats; r++) {
+			allMatched &= replay(path, botClass, r + 1);
+		}
+		System.exit(allMatched ? 0 : 1);
+	}
+
+	private static boolean replay(final String path, final String botClass, final int run) throws IOException {
+		final ReplayEngineIO io = new ReplayEngineIO(path);
+		final long initStart = System.nanoTime();
+		final Bot bot = createBot(botClass, new Networking(io, false));
+		final long initNanos = System.nanoTime() - initStart;
+
+		final List<Long> turnNanos = new ArrayList<>();
+		while (io.hasMoreInput()) {
+			final long t0 = System.nanoTime();
+			bot.takeTurn();
+			turnNanos.add(System.nanoTime() - t0);
+		}
+
+		System.out.println(String.format("run %d: %s replaying %s (recorded by %s)",
+				run, botClass, path, io.getBotName()));
+		System.out.println(String.format("  init %.1f ms, %d turns, moves identical on %d/%d turns",
+				initNanos / 1e6, turnNanos.size(), io.getMovesMatched(), io.getMovesCompared()));
+
+		final List<Integer> mismatched = io.getMismatchedTurns();
+		if (!mismatched.isEmpty()) {
+			System.out.println("  differing turns: "
+					+ mismatched.subList(0, Math.min(MISMATCHES_SHOWN, mismatched.size()))
+					+ (mismatched.size() > MISMATCHES_SHOWN ? " ..." : ""));
+			System.out.println("  last expected: " + io.getLastExpected());
+			System.out.println("  last actual:   " + io.getLastActual());
+		}
+
+		if (!turnNanos.isEmpty()) {
+			final long[] sorted = new long[turnNanos.size()];
+			for (int i = 0; i < sorted.length; i++) sorted[i] = turnNanos.get(i);
+			Arrays.sort(sorted);
+			System.out.println(String.format("  turn ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+					sorted[(sorted.length - 1) / 2] / 1e6, sorted[(int) ((sorted.length - 1) * 0.9)] / 1e6,
+					sorted[(int) ((sorted.length - 1) * 0.99)] / 1e6, sorted[sorted.length - 1] / 1e6));
+
+			final Integer[] order = new Integer[turnNanos.size()];
+			for (int i = 0; i < order.length; i++) order[i] = i;
+			Arrays.sort(order, (a, b) -> Long.compare(turnNanos.get(b), turnNanos.get(a)));
+			final StringBuilder slowest = new StringBuilder("  slowest turns:");
+			for (int i = 0; i < Math.min(SLOWEST_SHOWN, order.length); i++) {
+				slowest.append(String.format(" %d (%.1f ms)", order[i] + 1, turnNanos.get(order[i]) / 1e6));
+			}
+			System.out.println(slowest);
+		}
+		return mismatched.isEmpty();
+	}
+
+	private static Bot createBot(final String botClass, final Networking networking) {
+		switch (botClass) {
+		case "MyBot":
+			return new MyBot(networking);
+		case "MatrixBot8b":
+			return new MatrixBot8b(networking);
+		default:
+			throw new IllegalArgumentException("no replayable bot called " + botClass);
+		}
+	}
+}
@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import hlt2.Bot;
+import hlt2.InMemoryEngineIO;
+import hlt2.Networking;
+import hlt2.Simulator;
+
+/**
+ * Self-play tournament: every bot in the roster against every other, over many
+ * seeds and map sizes, with games running in parallel on the in-process Simulator.
+ * Prints win rates and the distribution of per-turn times for each bot.
+ *
+ * Usage: java Tournament [seeds per pairing] [threads] [players (2 or 4)] [first seed]
+ *
+ * Only bots written against hlt2 can play (QueueBot* still use the old hlt package).
+ * Turn times are wall-clock with the other games running alongside, so they read
+ * high compared to a lone bot; run with 1 thread for clean numbers.
+ */
+public class Tournament {
+
+	private static final int[][] MAP_SIZES = {{240, 160}, {264, 176}, {288, 192}, {312, 208}, {336, 224}, {360, 240}, {384, 256}};
+
+	private static final Map<String, Function<Networking, Bot>> ROSTER = new LinkedHashMap<>();
+	static {
+		ROSTER.put("MyBot", MyBot::new);
+		ROSTER.put("MatrixBot8b", MatrixBot8b::new);
+	}
+
+	static class GameSpec {
+		final long seed;
+		final int width, height;
+		final String[] seats; // bot name per player id
+
+		GameSpec(final long seed, final int width, final int height, final String[] seats) {
+			this.seed = seed;
+			this.width = width;
+			this.height = height;
+			this.seats = seats;
+		}
+	}
+
+	static class GameResult {
+		final GameSpec spec;
+		final int[] ranking;
+		final int turns;
+		final boolean[] crashed;
+		final long[][] turnNanos; // per seat, one entry per turn the bot played
+
+		GameResult(final GameSpec spec, final int[] ranking, final int turns, final boolean[] crashed, final long[][] turnNanos) {
+			this.spec = spec;
+			this.ranking = ranking;
+			this.turns = turns;
+			this.crashed = crashed;
+			this.turnNanos = turnNanos;
+		}
+	}
+
+	static class BotStats {
+		int games, wins, crashes;
+		long rankSum;
+		final ArrayList<long[]> turnNanos = new ArrayList<>();
+	}
+
+	public static void main(final String[] args) throws InterruptedException, ExecutionException {
+		final int seedsPerPairing = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final int numPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		final long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+		final List<GameSpec> specs = schedule(seedsPerPairing, numPlayers, firstSeed);
+		System.out.println(specs.size() + " games, " + numPlayers + " players, " + threads + " threads");
+
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		final List<Callable<GameResult>> jobs = new ArrayList<>();
+		for (final GameSpec spec : specs) {
+			jobs.add(() -> play(spec));
+		}
+		final long start = System.nanoTime();
+		final List<GameResult> results = new ArrayList<>();
+		try {
+			for (final Future<GameResult> future : pool.invokeAll(jobs)) {
+				results.add(future.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		final long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+		for (final GameResult result : results) {
+			System.out.println(describe(result));
+		}
+		System.out.println();
+		System.out.println("finished in " + elapsedMs + " ms");
+		report(results);
+	}
+
+	// two players: each ordered pair of distinct bots on each seed, so both bots
+	// get both seats; four players: the roster rotated through the seats
+	private static List<GameSpec> schedule(final int seedsPerPairing, final int numPlayers, final long firstSeed) {
+		final String[] names = ROSTER.keySet().toArray(new String[0]);
+		final List<GameSpec> specs = new ArrayList<>();
+		for (int k = 0; k < seedsPerPairing; k++) {
+			final long seed = firstSeed + k;
+			final int[] size = MAP_SIZES[(int) (seed % MAP_SIZES.length)];
+			if (numPlayers == 2) {
+				for (int i = 0; i < names.length; i++) {
+					for (int j = 0; j < names.length; j++) {
+						if (i != j) {
+							specs.add(new GameSpec(seed, size[0], size[1], new String[] {names[i], names[j]}));
+						}
+					}
+				}
+			} else {
+				final String[] seats = new String[numPlayers];
+				for (int p = 0; p < numPlayers; p++) {
+					seats[p] = names[(int) ((p + seed) % names.length)];
+				}
+				specs.add(new GameSpec(seed, size[0], size[1], seats));
+			}
+		}
+		return specs;
+	}
+
+	static GameResult play(final GameSpec spec) {
+		final int numPlayers = spec.seats.length;
+		final Simulator sim = Simulator.generate(spec.seed, spec.width, spec.height, numPlayers);
+		final InMemoryEngineIO[] ios = new InMemoryEngineIO[numPlayers];
+		final Bot[] bots = new Bot[numPlayers];
+		final boolean[] crashed = new boolean[numPlayers];
+		final long[][] turnNanos = new long[numPlayers][sim.getMaxTurns()];
+		final int[] turnsPlayed = new int[numPlayers];
+
+		final String preGame = sim.frame();
+		for (int p = 0; p < numPlayers; p++) {
+			ios[p] = new InMemoryEngineIO();
+			ios[p].push(sim.handshake(p));
+			ios[p].push(preGame);
+			try {
+				bots[p] = ROSTER.get(spec.seats[p]).apply(new Networking(ios[p], false));
+			} catch (RuntimeException e) {
+				crashed[p] = true;
+			}
+		}
+
+		while (!sim.isOver()) {
+			final String frame = sim.frame();
+			for (int p = 0; p < numPlayers; p++) {
+				// like the engine, stop talking to bots that crashed or have nothing left
+				if (crashed[p] || sim.shipCount(p) == 0) {
+					continue;
+				}
+				ios[p].push(frame);
+				final long t0 = System.nanoTime();
+				try {
+					bots[p].takeTurn();
+				} catch (RuntimeException e) {
+					crashed[p] = true;
+				}
+				turnNanos[p][turnsPlayed[p]++] = System.nanoTime() - t0;
+				sim.applyMoves(p, ios[p].takeMoves());
+			}
+			sim.step();
+		}
+
+		for (int p = 0; p < numPlayers; p++) {
+			turnNanos[p] = Arrays.copyOf(turnNanos[p], turnsPlayed[p]);
+		}
+		return new GameResult(spec, sim.ranking(), sim.getTurn(), crashed, turnNanos);
+	}
+
+	private static String describe(final GameResult result) {
+		final GameSpec spec = result.spec;
+		final StringBuilder sb = new StringBuilder();
+		sb.append("seed ").append(spec.seed).append(' ').append(spec.width).append('x').append(spec.height).append(": ");
+		for (int p = 0; p < spec.seats.length; p++) {
+			if (p > 0) sb.append(" vs ");
+			sb.append(spec.seats[p]);
+			if (result.crashed[p]) sb.append(" (crashed)");
+		}
+		sb.append(" -> ").append(spec.seats[result.ranking[0]]).append(" wins in ").append(result.turns).append(" turns");
+		return sb.toString();
+	}
+
+	private static void report(final List<GameResult> results) {
+		final Map<String, BotStats> stats = new LinkedHashMap<>();
+		for (final String name : ROSTER.keySet()) {
+			stats.put(name, new BotStats());
+		}
+		for (final GameResult result : results) {
+			for (int rank = 0; rank < result.ranking.length; rank++) {
+				final int p = result.ranking[rank];
+				final BotStats s = stats.get(result.spec.seats[p]);
+				s.games++;
+				s.rankSum += rank + 1;
+				if (rank == 0) s.wins++;
+				if (result.crashed[p]) s.crashes++;
+				s.turnNanos.add(result.turnNanos[p]);
+			}
+		}
+
+		System.out.println(String.format("%-14s %6s %6s %7s %8s %7s | %8s %8s %8s %8s  (turn ms)",
+				"bot", "games", "wins", "win%", "avgRank", "crashes", "p50", "p90", "p99", "max"));
+		for (final Map.Entry<String, BotStats> entry : stats.entrySet()) {
+			final BotStats s = entry.getValue();
+			if (s.games == 0) continue;
+			final long[] all = concat(s.turnNanos);
+			Arrays.sort(all);
+			System.out.println(String.format("%-14s %6d %6d %6.1f%% %8.2f %7d | %8.2f %8.2f %8.2f %8.2f",
+					entry.getKey(), s.games, s.wins, 100.0 * s.wins / s.games, (double) s.rankSum / s.games, s.crashes,
+					percentileMs(all, 0.50), percentileMs(all, 0.90), percentileMs(all, 0.99), percentileMs(all, 1.0)));
+		}
+	}
+
+	private static long[] concat(final List<long[]> parts) {
+		int n = 0;
+		for (final long[] part : parts) n += part.length;
+		final long[] all = new long[n];
+		int at = 0;
+		for (final long[] part : parts) {
+			System.arraycopy(part, 0, all, at, part.length);
+			at += part.length;
+		}
+		return all;
+	}
+
+	// nearest-rank percentile of a sorted array, in milliseconds
+	private static double percentileMs(final long[] sorted, final double q) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		final int rank = (int) Math.ceil(q * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))] / 1e6;
+	}
+}
@@ -0,0 +1,97 @@
+package hlt2;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lines go into a bounded ring buffer and are written to a file by a
+ * background thread, so disk I/O stays off the turn's critical path. If the
+ * buffer is full, lines are dropped and counted rather than blocking the bot.
+ * Used by Log and Metrics, one per file.
+ */
+class AsyncWriter {
+
+    private static final int CAPACITY = 1 << 14;
+
+    private final Writer file;
+    private final String droppedNotice;
+    private final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object writtenLock = new Object();
+    private long written = 0; // guarded by writtenLock
+
+    /**
+     * @param droppedNotice format for the line that reports how many lines were
+     * dropped, or null to drop them without a trace
+     */
+    AsyncWriter(final Writer f, final String threadName, final String droppedNotice) {
+        file = f;
+        this.droppedNotice = droppedNotice;
+        final Thread drainer = new Thread(this::drain, threadName);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    void enqueue(final String line) {
+        if (queue.offer(line)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        final ArrayList<String> batch = new ArrayList<>(256);
+        try {
+            for (;;) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                try {
+                    final long lost = dropped.getAndSet(0);
+                    if (lost > 0 && droppedNotice != null) {
+                        file.write(String.format(droppedNotice, lost));
+                        file.write('\n');
+                    }
+                    for (final String line : batch) {
+                        file.write(line);
+                        file.write('\n');
+                    }
+                    file.flush();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+                synchronized (writtenLock) {
+                    written += batch.size();
+                    writtenLock.notifyAll();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits up to timeoutMillis for everything enqueued so far to reach the file.
+     */
+    void awaitWritten(final long timeoutMillis) {
+        final long target = enqueued.get();
+        final long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        synchronized (writtenLock) {
+            long remaining;
+            while (written < target && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    writtenLock.wait(Math.max(1, remaining / 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
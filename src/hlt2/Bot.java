@@ -0,0 +1,10 @@
+package hlt2;
+
+/**
+ * A bot that can be driven one turn at a time. Each call reads one frame
+ * through the bot's Networking and sends one set of moves back.
+ */
+public interface Bot {
+
+    void takeTurn();
+}
@@ -2,17 +2,21 @@ package hlt2;
 
 public class Collision {
 	public static boolean twoShipCollide(Position r1, ThrustMove v1, Position r2, ThrustMove v2) {
-		// f = "final"
-		double x1f = r1.getXPos() + v1.getdX();
-		double y1f = r1.getYPos() + v1.getdY();
-		Position r1f = new Position(x1f, y1f);
-		double x2f = r2.getXPos() + v2.getdX();
-		double y2f = r2.getYPos() + v2.getdY();
-		Position r2f = new Position(x2f, y2f);
-		Position dri = Position.subtract(r2, r1);
-		Position drf = Position.subtract(r2f, r1f);
-		double radius = 2*Constants.SHIP_RADIUS;
-		return segmentCircleIntersect(dri, drf, new Entity(0, 0, 0, 0, 0, radius), Constants.SHIP_RADIUS/1000.0);
+		return twoShipCollide(r1.getXPos(), r1.getYPos(), v1.getdX(), v1.getdY(),
+				r2.getXPos(), r2.getYPos(), v2.getdX(), v2.getdY());
+	}
+
+	/** Same test on raw coordinates: ships at (x1, y1) and (x2, y2) moving by (dx1, dy1) and (dx2, dy2) */
+	public static boolean twoShipCollide(final double x1, final double y1, final double dx1, final double dy1,
+			final double x2, final double y2, final double dx2, final double dy2) {
+		Metrics.counters().shipPairTests++;
+		// f = "final"; the pair's offset at the start and the end, as one segment against a circle at the origin
+		final double x1f = x1 + dx1;
+		final double y1f = y1 + dy1;
+		final double x2f = x2 + dx2;
+		final double y2f = y2 + dy2;
+		return segmentCircleIntersect(x2 - x1, y2 - y1, x2f - x1f, y2f - y1f,
+				0, 0, 2 * Constants.SHIP_RADIUS, Constants.SHIP_RADIUS / 1000.0);
 	}
 	
     /**
@@ -25,16 +29,19 @@ public class Collision {
      * @return true if the segment intersects, false otherwise
      */
     public static boolean segmentCircleIntersect(final Position start, final Position end, final Entity circle, final double fudge) {
+        return segmentCircleIntersect(start.getXPos(), start.getYPos(), end.getXPos(), end.getYPos(),
+                circle.getXPos(), circle.getYPos(), circle.getRadius(), fudge);
+    }
+
+    /** Same test on raw coordinates, for callers that check many candidate segments. */
+    public static boolean segmentCircleIntersect(final double startX, final double startY,
+                                                 final double endX, final double endY,
+                                                 final double centerX, final double centerY,
+                                                 final double circleRadius, final double fudge) {
+        Metrics.counters().segmentTests++;
         // Parameterize the segment as start + t * (end - start),
         // and substitute into the equation of a circle
         // Solve for t
-        final double circleRadius = circle.getRadius();
-        final double startX = start.getXPos();
-        final double startY = start.getYPos();
-        final double endX = end.getXPos();
-        final double endY = end.getYPos();
-        final double centerX = circle.getXPos();
-        final double centerY = circle.getYPos();
         final double dx = endX - startX;
         final double dy = endY - startY;
 
@@ -47,7 +54,7 @@ public class Collision {
 
         if (a == 0.0) {
             // Start and end are the same point
-            return start.getDistanceTo(circle) <= circleRadius + fudge;
+            return distance(startX, startY, centerX, centerY) <= circleRadius + fudge;
         }
 
         // Time along segment when closest to the circle (vertex of the quadratic)
@@ -58,11 +65,45 @@ public class Collision {
 
         final double closestX = startX + dx * t;
         final double closestY = startY + dy * t;
-        final double closestDistance = new Position(closestX, closestY).getDistanceTo(circle);
+        final double closestDistance = distance(closestX, closestY, centerX, centerY);
 
         return closestDistance <= circleRadius + fudge;
     }
 
+    /**
+     * Where a segment that segmentCircleIntersect says hits the circle first
+     * comes within radius + fudge of its center.
+     *
+     * @return t in [0, 1] along start + t * (end - start); 0 if start is already that close
+     */
+    public static double segmentCircleEntry(final double startX, final double startY,
+                                            final double endX, final double endY,
+                                            final double centerX, final double centerY,
+                                            final double circleRadius, final double fudge) {
+        final double dx = endX - startX;
+        final double dy = endY - startY;
+        final double fx = startX - centerX;
+        final double fy = startY - centerY;
+        final double r = circleRadius + fudge;
+
+        final double a = square(dx) + square(dy);
+        final double c = square(fx) + square(fy) - square(r);
+        if (a == 0.0 || c <= 0) {
+            return 0;
+        }
+        final double b = 2 * (fx * dx + fy * dy);
+        final double disc = Math.max(0, square(b) - 4 * a * c);
+        final double t = (-b - Math.sqrt(disc)) / (2 * a);
+        return Math.min(1, Math.max(0, t));
+    }
+
+    // same arithmetic as Position.getDistanceTo, so both forms agree to the bit
+    private static double distance(final double x1, final double y1, final double x2, final double y2) {
+        final double dx = x1 - x2;
+        final double dy = y1 - y2;
+        return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+    }
+
     public static double square(final double num) {
         return num * num;
     }
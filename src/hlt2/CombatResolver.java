@@ -0,0 +1,212 @@
+package hlt2;
+
+import java.util.Arrays;
+
+/**
+ * Plays a local fight forward a few turns under the engine's weapon rules, to
+ * see who is left standing. Each turn every undocked ship first closes in on
+ * the nearest enemy (up to a given speed, stopping once it is in range), then
+ * every undocked ship that is not cooling down fires: WEAPON_DAMAGE split
+ * evenly over all enemies within WEAPON_RADIUS, after which it waits
+ * WEAPON_COOLDOWN turns. Damage is summed and rounded down per ship, as the
+ * engine does, and ships at zero health are gone.
+ *
+ * There are two teams, 0 and 1; in a game with more players every opponent
+ * goes on the same team. Ships do not collide and nothing docks or undocks.
+ *
+ * No allocation once the arrays have grown to the largest fight seen. Not
+ * thread safe; use one per thread.
+ */
+public class CombatResolver {
+
+	// centre distance at which the engine lets a ship fire at another
+	public static final double FIRING_RANGE = Constants.WEAPON_RADIUS + 2 * Constants.SHIP_RADIUS;
+	// how far inside the range a closing ship aims for, so it does not stop right at the edge
+	private static final double CLOSING_MARGIN = 0.5;
+
+	private int size = 0;
+	private int[] team = new int[16], health = new int[16], cooldown = new int[16];
+	private boolean[] undocked = new boolean[16];
+	private double[] x = new double[16], y = new double[16];
+
+	// per resolve
+	private int[] startHealth = new int[16];
+	private double[] nextX = new double[16], nextY = new double[16], damage = new double[16];
+
+	public void clear() {
+		size = 0;
+	}
+
+	/** @return the index of the added ship */
+	public int add(final int shipTeam, final double xPos, final double yPos, final int shipHealth,
+			final boolean isUndocked, final int weaponCooldown) {
+		if (size == team.length) {
+			grow(size * 2);
+		}
+		team[size] = shipTeam;
+		x[size] = xPos;
+		y[size] = yPos;
+		health[size] = shipHealth;
+		undocked[size] = isUndocked;
+		cooldown[size] = weaponCooldown;
+		return size++;
+	}
+
+	/** Adds a ship of the map as it stands, or at (xPos, yPos) instead */
+	public int add(final int shipTeam, final Ship ship, final double xPos, final double yPos) {
+		return add(shipTeam, xPos, yPos, ship.getHealth(),
+				ship.getDockingStatus() == Ship.DockingStatus.Undocked, ship.getWeaponCooldown());
+	}
+
+	public int add(final int shipTeam, final Ship ship) {
+		return add(shipTeam, ship, ship.getXPos(), ship.getYPos());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Plays the fight for the given number of turns, with undocked ships
+	 * moving up to speed a turn. The ships added are changed in place; clear()
+	 * before setting up the next fight.
+	 */
+	public void resolve(final int turns, final double speed) {
+		for (int i = 0; i < size; i++) {
+			startHealth[i] = health[i];
+		}
+		for (int turn = 0; turn < turns; turn++) {
+			if (!close(speed)) {
+				break; // one side is gone
+			}
+			fire();
+		}
+	}
+
+	// moves every undocked ship towards its nearest enemy; false if no ship has an enemy left
+	private boolean close(final double speed) {
+		boolean engaged = false;
+		for (int i = 0; i < size; i++) {
+			nextX[i] = x[i];
+			nextY[i] = y[i];
+			if (health[i] <= 0) {
+				continue;
+			}
+			int nearest = -1;
+			double nearestDistSq = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < size; j++) {
+				if (team[j] == team[i] || health[j] <= 0) {
+					continue;
+				}
+				final double dx = x[j] - x[i], dy = y[j] - y[i];
+				final double distSq = dx * dx + dy * dy;
+				if (distSq < nearestDistSq) {
+					nearestDistSq = distSq;
+					nearest = j;
+				}
+			}
+			if (nearest < 0) {
+				continue;
+			}
+			engaged = true;
+			final double dist = Math.sqrt(nearestDistSq);
+			final double step = Math.min(speed, dist - (FIRING_RANGE - CLOSING_MARGIN));
+			if (undocked[i] && step > 0) {
+				nextX[i] = x[i] + (x[nearest] - x[i]) * step / dist;
+				nextY[i] = y[i] + (y[nearest] - y[i]) * step / dist;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			x[i] = nextX[i];
+			y[i] = nextY[i];
+		}
+		return engaged;
+	}
+
+	private void fire() {
+		Arrays.fill(damage, 0, size, 0);
+		for (int i = 0; i < size; i++) {
+			if (health[i] <= 0 || !undocked[i]) {
+				continue;
+			}
+			if (cooldown[i] > 0) {
+				cooldown[i]--;
+				continue;
+			}
+			int targets = 0;
+			for (int j = 0; j < size; j++) {
+				if (inRange(i, j)) {
+					targets++;
+				}
+			}
+			if (targets == 0) {
+				continue;
+			}
+			final double each = (double) Constants.WEAPON_DAMAGE / targets;
+			for (int j = 0; j < size; j++) {
+				if (inRange(i, j)) {
+					damage[j] += each;
+				}
+			}
+			// the engine counts the cooldown down at the end of the same turn
+			cooldown[i] = Constants.WEAPON_COOLDOWN - 1;
+		}
+		for (int i = 0; i < size; i++) {
+			if (health[i] > 0) {
+				health[i] = Math.max(0, health[i] - (int) damage[i]);
+			}
+		}
+	}
+
+	private boolean inRange(final int i, final int j) {
+		if (team[j] == team[i] || health[j] <= 0) {
+			return false;
+		}
+		final double dx = x[j] - x[i], dy = y[j] - y[i];
+		return dx * dx + dy * dy <= FIRING_RANGE * FIRING_RANGE;
+	}
+
+	/** @return health of ship i after the last resolve, 0 if it was destroyed */
+	public int getHealth(final int i) {
+		return health[i];
+	}
+
+	public boolean isAlive(final int i) {
+		return health[i] > 0;
+	}
+
+	/** @return health the team lost in the last resolve */
+	public int getHealthLost(final int shipTeam) {
+		int lost = 0;
+		for (int i = 0; i < size; i++) {
+			if (team[i] == shipTeam) {
+				lost += startHealth[i] - health[i];
+			}
+		}
+		return lost;
+	}
+
+	/** @return ships of the team destroyed in the last resolve */
+	public int getLosses(final int shipTeam) {
+		int losses = 0;
+		for (int i = 0; i < size; i++) {
+			if (team[i] == shipTeam && startHealth[i] > 0 && health[i] <= 0) {
+				losses++;
+			}
+		}
+		return losses;
+	}
+
+	private void grow(final int n) {
+		team = Arrays.copyOf(team, n);
+		health = Arrays.copyOf(health, n);
+		cooldown = Arrays.copyOf(cooldown, n);
+		undocked = Arrays.copyOf(undocked, n);
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		startHealth = new int[n];
+		nextX = new double[n];
+		nextY = new double[n];
+		damage = new double[n];
+	}
+}
@@ -0,0 +1,185 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Ship-by-task values kept from turn to turn. Rows are keyed by ship id and
+ * columns by a task key. Each turn the caller declares the rows and columns it
+ * needs, with the positions the value depends on. An entry only has to be
+ * recomputed if its row or column moved (or is new). Rows and columns that
+ * were not declared in a turn are retired and their slots reused.
+ *
+ * Declaring rows and columns must happen on one thread. After that, get, set
+ * and isValid may run concurrently, as long as each thread sticks to entries
+ * of its own rows.
+ *
+ * Every move bumps a version number. An entry is valid while it holds the
+ * current versions of both its row and its column, so a retired slot that is
+ * reused can never serve a stale value.
+ */
+public class CostTable {
+
+	private final HashMap<Integer, Integer> rowSlots = new HashMap<>();
+	private final HashMap<Long, Integer> colSlots = new HashMap<>();
+
+	private int rowCapacity = 0, colCapacity = 0;
+	private int rowsUsed = 0, colsUsed = 0; // high-water marks; freed slots are on the free lists
+	private int[] freeRows = new int[0], freeCols = new int[0];
+	private int numFreeRows = 0, numFreeCols = 0;
+
+	private double[] rowX = new double[0], rowY = new double[0];
+	private int[] rowVersion = new int[0], rowSeen = new int[0];
+	private double[] colX1 = new double[0], colY1 = new double[0], colX2 = new double[0], colY2 = new double[0];
+	private int[] colVersion = new int[0], colSeen = new int[0];
+
+	// row-major, colCapacity entries per row
+	private double[] values = new double[0];
+	private int[] entryRowVersion = new int[0], entryColVersion = new int[0];
+
+	private int turn = 0;
+	private int nextVersion = 1;
+
+	public void beginTurn() {
+		turn++;
+	}
+
+	/** @return the row slot for this ship, marked stale if it moved */
+	public int row(final int shipId, final double x, final double y) {
+		Integer slot = rowSlots.get(shipId);
+		if (slot == null) {
+			slot = allocateRow();
+			rowSlots.put(shipId, slot);
+			rowVersion[slot] = nextVersion++;
+		} else if (rowX[slot] != x || rowY[slot] != y) {
+			rowVersion[slot] = nextVersion++;
+		}
+		rowX[slot] = x;
+		rowY[slot] = y;
+		rowSeen[slot] = turn;
+		return slot;
+	}
+
+	/**
+	 * @return the column slot for this task, marked stale if either of the
+	 * two points its values depend on moved
+	 */
+	public int col(final long taskKey, final double x1, final double y1, final double x2, final double y2) {
+		Integer slot = colSlots.get(taskKey);
+		if (slot == null) {
+			slot = allocateCol();
+			colSlots.put(taskKey, slot);
+			colVersion[slot] = nextVersion++;
+		} else if (colX1[slot] != x1 || colY1[slot] != y1 || colX2[slot] != x2 || colY2[slot] != y2) {
+			colVersion[slot] = nextVersion++;
+		}
+		colX1[slot] = x1;
+		colY1[slot] = y1;
+		colX2[slot] = x2;
+		colY2[slot] = y2;
+		colSeen[slot] = turn;
+		return slot;
+	}
+
+	/** Marks the columns of the matching tasks stale, for values that changed without a point moving */
+	public void invalidateCols(final LongPredicate taskKeys) {
+		for (Map.Entry<Long, Integer> e : colSlots.entrySet()) {
+			if (taskKeys.test(e.getKey())) {
+				colVersion[e.getValue()] = nextVersion++;
+			}
+		}
+	}
+
+	public boolean isValid(final int row, final int col) {
+		final int e = row * colCapacity + col;
+		return entryRowVersion[e] == rowVersion[row] && entryColVersion[e] == colVersion[col];
+	}
+
+	public double get(final int row, final int col) {
+		return values[row * colCapacity + col];
+	}
+
+	public void set(final int row, final int col, final double value) {
+		final int e = row * colCapacity + col;
+		values[e] = value;
+		entryRowVersion[e] = rowVersion[row];
+		entryColVersion[e] = colVersion[col];
+	}
+
+	/** Frees the rows and columns that were not declared since beginTurn() */
+	public void retireUnseen() {
+		for (Iterator<Map.Entry<Integer, Integer>> it = rowSlots.entrySet().iterator(); it.hasNext();) {
+			final int slot = it.next().getValue();
+			if (rowSeen[slot] != turn) {
+				it.remove();
+				freeRows[numFreeRows++] = slot;
+			}
+		}
+		for (Iterator<Map.Entry<Long, Integer>> it = colSlots.entrySet().iterator(); it.hasNext();) {
+			final int slot = it.next().getValue();
+			if (colSeen[slot] != turn) {
+				it.remove();
+				freeCols[numFreeCols++] = slot;
+			}
+		}
+	}
+
+	private int allocateRow() {
+		if (numFreeRows > 0) {
+			return freeRows[--numFreeRows];
+		}
+		if (rowsUsed == rowCapacity) {
+			growRows(Math.max(16, rowCapacity * 2));
+		}
+		return rowsUsed++;
+	}
+
+	private int allocateCol() {
+		if (numFreeCols > 0) {
+			return freeCols[--numFreeCols];
+		}
+		if (colsUsed == colCapacity) {
+			growCols(Math.max(16, colCapacity * 2));
+		}
+		return colsUsed++;
+	}
+
+	private void growRows(final int capacity) {
+		rowX = Arrays.copyOf(rowX, capacity);
+		rowY = Arrays.copyOf(rowY, capacity);
+		rowVersion = Arrays.copyOf(rowVersion, capacity);
+		rowSeen = Arrays.copyOf(rowSeen, capacity);
+		freeRows = Arrays.copyOf(freeRows, capacity);
+		// new rows start with version 0 entries, which no live row or column ever has
+		values = Arrays.copyOf(values, capacity * colCapacity);
+		entryRowVersion = Arrays.copyOf(entryRowVersion, capacity * colCapacity);
+		entryColVersion = Arrays.copyOf(entryColVersion, capacity * colCapacity);
+		rowCapacity = capacity;
+	}
+
+	private void growCols(final int capacity) {
+		colX1 = Arrays.copyOf(colX1, capacity);
+		colY1 = Arrays.copyOf(colY1, capacity);
+		colX2 = Arrays.copyOf(colX2, capacity);
+		colY2 = Arrays.copyOf(colY2, capacity);
+		colVersion = Arrays.copyOf(colVersion, capacity);
+		colSeen = Arrays.copyOf(colSeen, capacity);
+		freeCols = Arrays.copyOf(freeCols, capacity);
+		// rows get wider, so entries move
+		final double[] newValues = new double[rowCapacity * capacity];
+		final int[] newRowVersion = new int[rowCapacity * capacity];
+		final int[] newColVersion = new int[rowCapacity * capacity];
+		for (int r = 0; r < rowCapacity; r++) {
+			System.arraycopy(values, r * colCapacity, newValues, r * capacity, colCapacity);
+			System.arraycopy(entryRowVersion, r * colCapacity, newRowVersion, r * capacity, colCapacity);
+			System.arraycopy(entryColVersion, r * colCapacity, newColVersion, r * capacity, colCapacity);
+		}
+		values = newValues;
+		entryRowVersion = newRowVersion;
+		entryColVersion = newColVersion;
+		colCapacity = capacity;
+	}
+}
@@ -0,0 +1,15 @@
+package hlt2;
+
+/**
+ * Where a bot's engine traffic goes. The real engine talks over stdin/stdout
+ * (StdioEngineIO); the simulator and replay tools plug in their own.
+ */
+public interface EngineIO {
+
+    /** Replaces the contents of the buffer with the next line from the engine */
+    void readLine(Metadata into);
+
+    void writeLine(String line);
+
+    void writeMoves(Iterable<Move> moves);
+}
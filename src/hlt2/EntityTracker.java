@@ -0,0 +1,167 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * What every ship did over its last HISTORY turns, which a single frame does
+ * not tell: where it was, its health and its docking status. Each ship id
+ * gets a slot for as long as it is alive; the records of a slot are a ring
+ * buffer of HISTORY entries in flat arrays. Slots of ships that are gone are
+ * reused, so the arrays stop growing once the most ships ever alive at once
+ * have been seen.
+ *
+ * Ages count back from the latest frame: age 0 is this turn, age 1 the turn
+ * before. A ship is only known for as many turns as it has been seen, up to
+ * HISTORY.
+ */
+public class EntityTracker {
+
+	public static final int HISTORY = 8; // a power of two
+	public static final int UNKNOWN = -1;
+
+	private static final Ship.DockingStatus[] DOCKING_STATUSES = Ship.DockingStatus.values();
+
+	private final HashMap<Integer, Integer> slots = new HashMap<>();
+	private int turn = 0;
+
+	private int capacity = 0, used = 0;
+	private int[] free = new int[0];
+	private int numFree = 0;
+
+	// per slot
+	private int[] shipId = new int[0], owner = new int[0];
+	private int[] records = new int[0]; // how many of the ring's entries hold data
+
+	// per slot, HISTORY entries each; entry (slot, turn) is at slot * HISTORY + turn % HISTORY
+	private double[] x = new double[0], y = new double[0];
+	private int[] health = new int[0], dockingStatus = new int[0];
+
+	/**
+	 * Records this turn's frame. Ships that are gone must have been removed
+	 * first with remove() (GameMap does so on SHIP_DESTROYED), or their slots
+	 * are never freed.
+	 */
+	public void update(final ShipTable table) {
+		turn++;
+		for (int i = 0; i < table.size(); i++) {
+			final int id = table.getId(i);
+			Integer slot = slots.get(id);
+			if (slot == null) {
+				slot = allocate();
+				slots.put(id, slot);
+				shipId[slot] = id;
+				owner[slot] = table.getOwner(i);
+				records[slot] = 0;
+			}
+			final int e = slot * HISTORY + (turn & (HISTORY - 1));
+			x[e] = table.getX(i);
+			y[e] = table.getY(i);
+			health[e] = table.getHealth(i);
+			dockingStatus[e] = table.getDockingStatus(i).ordinal();
+			records[slot] = Math.min(HISTORY, records[slot] + 1);
+		}
+	}
+
+	/** Forgets a ship that is gone; its slot goes to the next new ship */
+	public void remove(final int id) {
+		final Integer slot = slots.remove(id);
+		if (slot != null) {
+			free[numFree++] = slot;
+		}
+	}
+
+	private int allocate() {
+		if (numFree > 0) {
+			return free[--numFree];
+		}
+		if (used == capacity) {
+			grow(Math.max(64, capacity * 2));
+		}
+		return used++;
+	}
+
+	private void grow(final int n) {
+		free = Arrays.copyOf(free, n);
+		shipId = Arrays.copyOf(shipId, n);
+		owner = Arrays.copyOf(owner, n);
+		records = Arrays.copyOf(records, n);
+		x = Arrays.copyOf(x, n * HISTORY);
+		y = Arrays.copyOf(y, n * HISTORY);
+		health = Arrays.copyOf(health, n * HISTORY);
+		dockingStatus = Arrays.copyOf(dockingStatus, n * HISTORY);
+		capacity = n;
+	}
+
+	/** @return the number of ships being tracked */
+	public int size() {
+		return slots.size();
+	}
+
+	/** @return the slots allocated so far, free or not */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** @return the slot of a ship seen in the latest frame, or UNKNOWN */
+	public int slot(final int id) {
+		final Integer slot = slots.get(id);
+		return slot == null ? UNKNOWN : slot;
+	}
+
+	public int getShipId(final int slot) {
+		return shipId[slot];
+	}
+
+	public int getOwner(final int slot) {
+		return owner[slot];
+	}
+
+	/** @return how many turns back the history of this slot reaches (1 for a ship seen only this turn) */
+	public int getHistoryLength(final int slot) {
+		return records[slot];
+	}
+
+	private int entry(final int slot, final int age) {
+		if (age < 0 || age >= records[slot]) {
+			throw new IndexOutOfBoundsException("age " + age + " of ship " + shipId[slot] + ", " + records[slot] + " recorded");
+		}
+		return slot * HISTORY + ((turn - age) & (HISTORY - 1));
+	}
+
+	public double getX(final int slot, final int age) {
+		return x[entry(slot, age)];
+	}
+
+	public double getY(final int slot, final int age) {
+		return y[entry(slot, age)];
+	}
+
+	public int getHealth(final int slot, final int age) {
+		return health[entry(slot, age)];
+	}
+
+	public Ship.DockingStatus getDockingStatus(final int slot, final int age) {
+		return DOCKING_STATUSES[dockingStatus[entry(slot, age)]];
+	}
+
+	/** @return x distance moved in the last turn; 0 for a ship first seen this turn */
+	public double getVelocityX(final int slot) {
+		return records[slot] < 2 ? 0 : getX(slot, 0) - getX(slot, 1);
+	}
+
+	/** @return y distance moved in the last turn; 0 for a ship first seen this turn */
+	public double getVelocityY(final int slot) {
+		return records[slot] < 2 ? 0 : getY(slot, 0) - getY(slot, 1);
+	}
+
+	/** @return where the ship would be after turns more turns at its last velocity */
+	public double predictX(final int slot, final int turns) {
+		return getX(slot, 0) + turns * getVelocityX(slot);
+	}
+
+	/** @return where the ship would be after turns more turns at its last velocity */
+	public double predictY(final int slot, final int turns) {
+		return getY(slot, 0) + turns * getVelocityY(slot);
+	}
+}
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 import hlt2.Ship.DockingStatus;
@@ -22,6 +23,23 @@ public class GameMap {
     private final List<Entity> stationaryEntities;
     private final List<Entity> stationaryEntitiesUnmodifiable;
     private List<Ship> myStillShips;
+    private final SpatialGrid shipGrid;
+    // planet centres, indexed like planetList (planets by id)
+    private final SpatialGrid planetGrid;
+    private final List<Planet> planetList = new ArrayList<>();
+    private double maxPlanetRadius = 0;
+    private final ShipTable shipTable = new ShipTable();
+    private final EntityTracker tracker = new EntityTracker();
+    private final List<MapEvent> events = new ArrayList<>();
+    private final List<MapEvent> eventsUnmodifiable = Collections.unmodifiableList(events);
+    private final List<Consumer<MapEvent>> listeners = new ArrayList<>();
+    // the last frame, to diff the next one against; the two id maps swap every turn
+    private Map<Integer, Ship> shipsById = new HashMap<>(), previousShipsById = new HashMap<>();
+    private final List<Ship> previousShips = new ArrayList<>();
+    private final Map<Integer, Planet> previousPlanets = new TreeMap<>();
+    // reused across turns; the player set never changes during a game
+    private final List<Player> playerCache = new ArrayList<>(Constants.MAX_PLAYERS);
+    private final List<Map<Integer, Ship>> playerShipMaps = new ArrayList<>(Constants.MAX_PLAYERS);
 
     // used only during parsing to reduce memory allocations
     private final List<Ship> currentShips = new ArrayList<>();
@@ -37,6 +55,8 @@ public class GameMap {
         allShipsUnmodifiable = Collections.unmodifiableList(allShips);
         stationaryEntities = new ArrayList<>();
         stationaryEntitiesUnmodifiable = Collections.unmodifiableList(stationaryEntities);
+        shipGrid = new SpatialGrid(width, height, SpatialGrid.DEFAULT_CELL_SIZE);
+        planetGrid = new SpatialGrid(width, height, SpatialGrid.DEFAULT_CELL_SIZE);
     }
 
     public int getHeight() {
@@ -82,6 +102,25 @@ public class GameMap {
     public List<Entity> getStationaryEntities() {
     	return stationaryEntitiesUnmodifiable;
     }
+    
+    // row i of the table is getAllShips().get(i)
+    public ShipTable getShipTable() {
+    	return shipTable;
+    }
+
+    public EntityTracker getTracker() {
+    	return tracker;
+    }
+
+    // what changed with the latest frame; every ship in the first frame counts as spawned
+    public List<MapEvent> getEvents() {
+    	return eventsUnmodifiable;
+    }
+
+    /** Calls listener with each event of every frame from now on, once the map is up to date */
+    public void addListener(final Consumer<MapEvent> listener) {
+    	listeners.add(listener);
+    }
 
     public ArrayList<Entity> objectsBetween(Position start, Position target) {
         final ArrayList<Entity> entitiesFound = new ArrayList<>();
@@ -127,6 +166,146 @@ public class GameMap {
     	return entitiesFound;
     }
 
+    // which obstacles a segment query checks, matching the *ObjectsBetween lists
+    private static final int ALL_OBJECTS = 0, STATIONARY_OBJECTS = 1, STATIONARY_OBJECTS_2 = 2;
+
+    /** objectsBetween(start, target).isEmpty(), without building the list; stops at the first hit */
+    public boolean isPathClear(final Position start, final Position target) {
+        return findObjectsBetween(start, target, target.getXPos(), target.getYPos(), ALL_OBJECTS, null) == null;
+    }
+
+    public boolean isStationaryPathClear(final Position start, final Position target) {
+        return findObjectsBetween(start, target, target.getXPos(), target.getYPos(), STATIONARY_OBJECTS, null) == null;
+    }
+
+    public boolean isStationaryPathClear2(final Position start, final Position target) {
+        return findObjectsBetween(start, target, target.getXPos(), target.getYPos(), STATIONARY_OBJECTS_2, null) == null;
+    }
+
+    public static boolean isPathClear(final Position start, final Position target,
+    		final List<? extends Entity> entitiesToCheck) {
+    	return findEntitiesBetween(start, target, target.getXPos(), target.getYPos(), entitiesToCheck, null) == null;
+    }
+
+    /**
+     * The entity of objectsBetween(start, target) the segment reaches first.
+     * @return false (and hit cleared) if the path is clear
+     */
+    public boolean firstObjectBetween(final Position start, final Position target, final SegmentHit hit) {
+        hit.clear();
+        return findObjectsBetween(start, target, target.getXPos(), target.getYPos(), ALL_OBJECTS, hit) != null;
+    }
+
+    public boolean firstStationaryObjectBetween(final Position start, final Position target, final SegmentHit hit) {
+        hit.clear();
+        return findObjectsBetween(start, target, target.getXPos(), target.getYPos(), STATIONARY_OBJECTS, hit) != null;
+    }
+
+    public boolean firstStationaryObjectBetween2(final Position start, final Position target, final SegmentHit hit) {
+        hit.clear();
+        return findObjectsBetween(start, target, target.getXPos(), target.getYPos(), STATIONARY_OBJECTS_2, hit) != null;
+    }
+
+    public static boolean firstObjectBetween(final Position start, final Position target,
+    		final List<? extends Entity> entitiesToCheck, final SegmentHit hit) {
+    	hit.clear();
+    	return findEntitiesBetween(start, target, target.getXPos(), target.getYPos(), entitiesToCheck, hit) != null;
+    }
+
+    /*
+     * Some entity of objectsBetween(start, (endX, endY)), or null; stops at the
+     * first hit. target is the end point as an object, if there is one, and is
+     * never an obstacle itself. These four have the shape of
+     * HeadingSolver.Obstacles.
+     */
+    public Entity objectBlocking(final Position start, final Position target, final double endX, final double endY) {
+        return findObjectsBetween(start, target, endX, endY, ALL_OBJECTS, null);
+    }
+
+    public Entity stationaryObjectBlocking(final Position start, final Position target, final double endX, final double endY) {
+        return findObjectsBetween(start, target, endX, endY, STATIONARY_OBJECTS, null);
+    }
+
+    public Entity stationaryObjectBlocking2(final Position start, final Position target, final double endX, final double endY) {
+        return findObjectsBetween(start, target, endX, endY, STATIONARY_OBJECTS_2, null);
+    }
+
+    public static Entity entityBlocking(final Position start, final Position target, final double endX, final double endY,
+    		final List<? extends Entity> entitiesToCheck) {
+    	return findEntitiesBetween(start, target, endX, endY, entitiesToCheck, null);
+    }
+
+    /*
+     * With hit == null, returns the first entity found on the segment. Otherwise
+     * checks them all and returns the earliest, which is also left in hit. Ships
+     * come from the grid cells under the segment's bounding box, grown by the
+     * most a ship can be off the segment and still touch it. Lists are walked by
+     * index, so no query allocates.
+     */
+    private Entity findObjectsBetween(final Position start, final Position target, final double tx, final double ty,
+    		final int which, final SegmentHit hit) {
+        Entity found = findEntitiesBetween(start, target, tx, ty, planetList, hit);
+        if (found != null && hit == null) {
+            return found;
+        }
+        if (which == STATIONARY_OBJECTS_2) {
+            final Entity still = findEntitiesBetween(start, target, tx, ty, myStillShips, hit);
+            if (still != null && hit == null) {
+                return still;
+            }
+        }
+
+        final double sx = start.getXPos(), sy = start.getYPos();
+        final double margin = Constants.SHIP_RADIUS + Constants.FORECAST_FUDGE_FACTOR;
+        final int col0 = shipGrid.col(Math.min(sx, tx) - margin), col1 = shipGrid.col(Math.max(sx, tx) + margin);
+        final int row0 = shipGrid.row(Math.min(sy, ty) - margin), row1 = shipGrid.row(Math.max(sy, ty) + margin);
+        for (int r = row0; r <= row1; r++) {
+            final int end = shipGrid.runEnd(col1, r);
+            for (int k = shipGrid.runStart(col0, r); k < end; k++) {
+                final Ship ship = allShips.get(shipGrid.item(k));
+                if (which == STATIONARY_OBJECTS && ship.getDockingStatus() == DockingStatus.Undocked) {
+                    continue;
+                }
+                if (which == STATIONARY_OBJECTS_2 && ship.getOwner() == playerId) {
+                    continue;
+                }
+                if (hitsEntity(start, target, tx, ty, ship, hit) && hit == null) {
+                    return ship;
+                }
+            }
+        }
+        return hit == null ? null : hit.getEntity();
+    }
+
+    private static Entity findEntitiesBetween(final Position start, final Position target, final double tx, final double ty,
+    		final List<? extends Entity> entitiesToCheck, final SegmentHit hit) {
+        for (int i = 0; i < entitiesToCheck.size(); i++) {
+            final Entity entity = entitiesToCheck.get(i);
+            if (hitsEntity(start, target, tx, ty, entity, hit) && hit == null) {
+                return entity;
+            }
+        }
+        return hit == null ? null : hit.getEntity();
+    }
+
+    // the addEntitiesBetween test for one entity; a hit is also offered to hit, if there is one
+    private static boolean hitsEntity(final Position start, final Position target, final double tx, final double ty,
+    		final Entity entity, final SegmentHit hit) {
+        if (entity.equals(start) || entity.equals(target)) {
+            return false;
+        }
+        final double sx = start.getXPos(), sy = start.getYPos();
+        if (!Collision.segmentCircleIntersect(sx, sy, tx, ty,
+                entity.getXPos(), entity.getYPos(), entity.getRadius(), Constants.FORECAST_FUDGE_FACTOR)) {
+            return false;
+        }
+        if (hit != null) {
+            hit.offer(entity, Collision.segmentCircleEntry(sx, sy, tx, ty,
+                    entity.getXPos(), entity.getYPos(), entity.getRadius(), Constants.FORECAST_FUDGE_FACTOR));
+        }
+        return true;
+    }
+
     private static void addEntitiesBetween(final List<Entity> entitiesFound,
                                            final Position start, final Position target,
                                            final Collection<? extends Entity> entitiesToCheck) {
@@ -179,10 +358,16 @@ public class GameMap {
         return entityByDistance;
     }
     
+    // indices into allShips of the ships that may lie within radius of (x, y)
+    private int[] shipsNear(final double x, final double y, final double radius) {
+        return shipGrid.candidates(x, y, radius);
+    }
+
     public ArrayList<Ship> nearbyShipsWithinDistance(final Entity entity, double distance) {
         final ArrayList<Ship> entityByDistance = new ArrayList<>();
 
-        for (final Ship ship : allShips) {
+        for (final int idx : shipsNear(entity.getXPos(), entity.getYPos(), distance)) {
+            final Ship ship = allShips.get(idx);
             if (ship.equals(entity)) {
                 continue;
             }
@@ -194,10 +379,23 @@ public class GameMap {
         return entityByDistance;
     }
     
+    /** @return planets whose surface is closer than distance to the entity's centre, by id */
+    public ArrayList<Planet> nearbyPlanetsWithinDistance(final Entity entity, final double distance) {
+        final ArrayList<Planet> found = new ArrayList<>();
+        for (final int idx : planetGrid.candidates(entity.getXPos(), entity.getYPos(), distance + maxPlanetRadius)) {
+            final Planet planet = planetList.get(idx);
+            if (entity.getDistanceTo(planet) - planet.getRadius() < distance) {
+                found.add(planet);
+            }
+        }
+        return found;
+    }
+
     public ArrayList<Ship> nearbyShipsWithinDistance(final Entity entity, double distance, Predicate<Ship> shipFilter) {
         final ArrayList<Ship> entityByDistance = new ArrayList<>();
 
-        for (final Ship ship : allShips) {
+        for (final int idx : shipsNear(entity.getXPos(), entity.getYPos(), distance)) {
+            final Ship ship = allShips.get(idx);
             if (ship.equals(entity)) {
                 continue;
             }
@@ -215,7 +413,8 @@ public class GameMap {
         Entity shipDest = new Entity(entity.getOwner(), -1, dest.getXPos(), dest.getYPos(),
         		entity.getHealth(), entity.getRadius());
 
-        for (final Ship ship : allShips) {
+        for (final int idx : shipsNear(dest.getXPos(), dest.getYPos(), distance)) {
+            final Ship ship = allShips.get(idx);
             if (ship.equals(entity)) {
                 continue;
             }
@@ -234,7 +433,8 @@ public class GameMap {
         Entity shipDest = new Entity(entity.getOwner(), -1, dest.getXPos(), dest.getYPos(),
         		entity.getHealth(), entity.getRadius());
 
-        for (final Ship ship : allShips) {
+        for (final int idx : shipsNear(dest.getXPos(), dest.getYPos(), distance)) {
+            final Ship ship = allShips.get(idx);
             if (ship.equals(entity)) {
                 continue;
             }
@@ -246,6 +446,27 @@ public class GameMap {
         return entityByDistance;
     }
     
+    /**
+     * Fills out with the ships other than except whose centres are closer than
+     * distance to (x, y), in no particular order; allocates nothing once out has grown
+     */
+    public void shipsWithinDistance(final Entity except, final double x, final double y, final double distance,
+            final List<Ship> out) {
+        out.clear();
+        final int col0 = shipGrid.col(x - distance), col1 = shipGrid.col(x + distance);
+        final int row0 = shipGrid.row(y - distance), row1 = shipGrid.row(y + distance);
+        for (int r = row0; r <= row1; r++) {
+            final int end = shipGrid.runEnd(col1, r);
+            for (int k = shipGrid.runStart(col0, r); k < end; k++) {
+                final Ship ship = allShips.get(shipGrid.item(k));
+                final double dx = ship.getXPos() - x, dy = ship.getYPos() - y;
+                if (dx * dx + dy * dy < distance * distance && !ship.equals(except)) {
+                    out.add(ship);
+                }
+            }
+        }
+    }
+    
     public ArrayList<Entity> nearbyEntitiesWithinDistance(
     		final ArrayList<? extends Entity> entities, double distance) {
     	ArrayList<Entity> nearby = new ArrayList<Entity>();
@@ -261,8 +482,18 @@ public class GameMap {
     		}
     	}
     	
+    	// mark every ship near any of the entities, then walk them in allShips order
+    	final boolean[] candidate = new boolean[allShips.size()];
+    	for (Entity e : entities) {
+    		for (final int idx : shipsNear(e.getXPos(), e.getYPos(), distance + Constants.SHIP_RADIUS)) {
+    			candidate[idx] = true;
+    		}
+    	}
+    	
     	shipLoop:
-    	for (final Ship ship : allShips) {
+    	for (int idx = 0; idx < candidate.length; idx++) {
+    		if (!candidate[idx]) continue;
+    		final Ship ship = allShips.get(idx);
     		for (Entity e : entities) if (ship.equals(e)) continue shipLoop;
     		for (Entity e : entities) {
     			if (e.getDistanceTo(ship) - Constants.SHIP_RADIUS < distance) {
@@ -275,17 +506,7 @@ public class GameMap {
     }
     
     public Map<Double, Ship> hostilesNearPlanet(final Planet planet) {
-    	final Map<Double, Ship> hostilesByDistance = new HashMap<>();
-    	
-    	for (final Ship ship : allShips) {
-    		if (ship.getOwner() != getMyPlayerId()) {
-    			double dist = planet.getDistanceTo(ship);
-    			if (dist <= Constants.SHIP_RADIUS + Constants.DOCK_RADIUS + Constants.WEAPON_RADIUS + planet.getRadius()) {
-    				hostilesByDistance.put(dist, ship);
-    			}
-    		}
-    	}
-    	return hostilesByDistance;
+    	return hostilesNearPlanet(planet, Constants.SHIP_RADIUS + Constants.DOCK_RADIUS + Constants.WEAPON_RADIUS);
     }
     
     public Map<Double, Ship> hostilesNearPlanet(final Planet planet, double dist_from_planet) {
@@ -293,11 +514,11 @@ public class GameMap {
     	
     	double radius = planet.getRadius() + dist_from_planet;
     	
-    	for (final Ship ship : allShips) {
-    		if (ship.getOwner() != getMyPlayerId()) {
-    			double dist = planet.getDistanceTo(ship);
+    	for (final int idx : shipsNear(planet.getXPos(), planet.getYPos(), radius)) {
+    		if (shipTable.getOwner(idx) != getMyPlayerId()) {
+    			double dist = shipTable.distanceTo(idx, planet.getXPos(), planet.getYPos());
     			if (dist <= radius) {
-    				hostilesByDistance.put(dist, ship);
+    				hostilesByDistance.put(dist, shipTable.getShip(idx));
     			}
     		}
     	}
@@ -307,12 +528,13 @@ public class GameMap {
     public Map<Double, Ship> undockedHostilesNearPlanet(final Planet planet) {
     	final Map<Double, Ship> hostilesByDistance = new HashMap<>();
     	
-    	for (final Ship ship : allShips) {
-    		if (ship.getOwner() != getMyPlayerId() &&
-    				ship.getDockingStatus() == DockingStatus.Undocked) {
-    			double dist = planet.getDistanceTo(ship);
-    			if (dist <= Constants.SHIP_RADIUS + Constants.DOCK_RADIUS + Constants.WEAPON_RADIUS + planet.getRadius()) {
-    				hostilesByDistance.put(dist, ship);
+    	double radius = Constants.SHIP_RADIUS + Constants.DOCK_RADIUS + Constants.WEAPON_RADIUS + planet.getRadius();
+    	
+    	for (final int idx : shipsNear(planet.getXPos(), planet.getYPos(), radius)) {
+    		if (shipTable.getOwner(idx) != getMyPlayerId() && shipTable.isUndocked(idx)) {
+    			double dist = shipTable.distanceTo(idx, planet.getXPos(), planet.getYPos());
+    			if (dist <= radius) {
+    				hostilesByDistance.put(dist, shipTable.getShip(idx));
     			}
     		}
     	}
@@ -320,29 +542,19 @@ public class GameMap {
     }
     
     public Map<Double, Ship> undockedFriendliesNearPlanet(final Planet planet) {
-    	final Map<Double, Ship> friendliesByDistance = new HashMap<>();
-    	
-    	for (final Ship ship : allShips) {
-    		if (ship.getOwner() == getMyPlayerId() &&
-    				ship.getDockingStatus() == DockingStatus.Undocked) {
-    			double dist = planet.getDistanceTo(ship);
-    			if (dist <= Constants.SHIP_RADIUS + Constants.DOCK_RADIUS + Constants.WEAPON_RADIUS + planet.getRadius()) {
-    				friendliesByDistance.put(dist, ship);
-    			}
-    		}
-    	}
-    	return friendliesByDistance;
+    	return undockedFriendliesNearPlanet(planet, Constants.SHIP_RADIUS + Constants.DOCK_RADIUS + Constants.WEAPON_RADIUS);
     }
     
     public Map<Double, Ship> undockedFriendliesNearPlanet(final Planet planet, double dist_from_planet) {
     	final Map<Double, Ship> friendliesByDistance = new HashMap<>();
     	
-    	for (final Ship ship : allShips) {
-    		if (ship.getOwner() == getMyPlayerId() &&
-    				ship.getDockingStatus() == DockingStatus.Undocked) {
-    			double dist = planet.getDistanceTo(ship);
-    			if (dist <= dist_from_planet + planet.getRadius()) {
-    				friendliesByDistance.put(dist, ship);
+    	double radius = dist_from_planet + planet.getRadius();
+    	
+    	for (final int idx : shipsNear(planet.getXPos(), planet.getYPos(), radius)) {
+    		if (shipTable.getOwner(idx) == getMyPlayerId() && shipTable.isUndocked(idx)) {
+    			double dist = shipTable.distanceTo(idx, planet.getXPos(), planet.getYPos());
+    			if (dist <= radius) {
+    				friendliesByDistance.put(dist, shipTable.getShip(idx));
     			}
     		}
     	}
@@ -352,11 +564,11 @@ public class GameMap {
     public Map<Double, Ship> hostilesNearShip(final Ship ship, double radius) {
     	final Map<Double, Ship> hostilesByDistance = new HashMap<>();
     	
-    	for (final Ship eShip : allShips) {
-    		if (eShip.getOwner() != getMyPlayerId()) {
-    			double dist = ship.getDistanceTo(eShip);
+    	for (final int idx : shipsNear(ship.getXPos(), ship.getYPos(), radius)) {
+    		if (shipTable.getOwner(idx) != getMyPlayerId()) {
+    			double dist = shipTable.distanceTo(idx, ship.getXPos(), ship.getYPos());
     			if (dist <= radius) {
-    				hostilesByDistance.put(dist, eShip);
+    				hostilesByDistance.put(dist, shipTable.getShip(idx));
     			}
     		}
     	}
@@ -366,13 +578,13 @@ public class GameMap {
     public Map<Double, Ship> undockedFriendliesNearShip(final Ship ship, double radius) {
     	final Map<Double, Ship> friendliesByDistance = new HashMap<>();
     	
-    	for (final Ship fShip : allShips) {
-    		if (fShip.getOwner() == getMyPlayerId() &&
-    				fShip.getId() != ship.getId() &&
-    				fShip.getDockingStatus() == DockingStatus.Undocked) {
-    			double dist = ship.getDistanceTo(fShip);
+    	for (final int idx : shipsNear(ship.getXPos(), ship.getYPos(), radius)) {
+    		if (shipTable.getOwner(idx) == getMyPlayerId() &&
+    				shipTable.getId(idx) != ship.getId() &&
+    				shipTable.isUndocked(idx)) {
+    			double dist = shipTable.distanceTo(idx, ship.getXPos(), ship.getYPos());
     			if (dist <= radius) {
-    				friendliesByDistance.put(dist, fShip);
+    				friendliesByDistance.put(dist, shipTable.getShip(idx));
     			}
     		}
     	}
@@ -389,46 +601,131 @@ public class GameMap {
     	return ships;
     }
 
+    /*
+     * Reads a frame. Ships and planets that did not change since the last one
+     * keep their objects, and the per-player ship maps are only patched, so
+     * anything that holds on to them across turns still sees the same objects.
+     */
     public GameMap updateMap(final Metadata mapMetadata) {
         final int numberOfPlayers = MetadataParser.parsePlayerNum(mapMetadata);
 
+        final Map<Integer, Ship> lastShipsById = shipsById;
+        shipsById = previousShipsById;
+        previousShipsById = lastShipsById;
+        shipsById.clear();
+        previousShips.clear();
+        previousShips.addAll(allShips);
+        previousPlanets.clear();
+        previousPlanets.putAll(planets);
+
         players.clear();
         planets.clear();
         allShips.clear();
         stationaryEntities.clear();
+        shipTable.clear();
 
         // update players info
         for (int i = 0; i < numberOfPlayers; ++i) {
             currentShips.clear();
-            final Map<Integer, Ship> currentPlayerShips = new TreeMap<>();
             final int playerId = MetadataParser.parsePlayerId(mapMetadata);
+            if (i == playerCache.size() || playerCache.get(i).getId() != playerId) {
+                final Map<Integer, Ship> shipMap = new TreeMap<>();
+                if (i == playerCache.size()) {
+                    playerShipMaps.add(shipMap);
+                    playerCache.add(new Player(playerId, shipMap));
+                } else {
+                    playerShipMaps.set(i, shipMap);
+                    playerCache.set(i, new Player(playerId, shipMap));
+                }
+            }
+            final Map<Integer, Ship> currentPlayerShips = playerShipMaps.get(i);
 
-            final Player currentPlayer = new Player(playerId, currentPlayerShips);
-            MetadataParser.populateShipList(currentShips, playerId, mapMetadata);
+            final Player currentPlayer = playerCache.get(i);
+            MetadataParser.populateShipList(currentShips, shipTable, playerId, mapMetadata, previousShipsById);
             allShips.addAll(currentShips);
 
             for (final Ship ship : currentShips) {
+                shipsById.put(ship.getId(), ship);
                 currentPlayerShips.put(ship.getId(), ship);
                 if (ship.getDockingStatus() != DockingStatus.Undocked) {
                 	stationaryEntities.add(ship);
                 }
             }
+            // ids are unique across players, so this player's dead ships are the ones not read yet
+            currentPlayerShips.keySet().removeIf(id -> !shipsById.containsKey(id));
             players.add(currentPlayer);
         }
 
-        final int numberOfPlanets = Integer.parseInt(mapMetadata.pop());
+        final int numberOfPlanets = mapMetadata.popInt();
 
         for (int i = 0; i < numberOfPlanets; ++i) {
             final List<Integer> dockedShips = new ArrayList<>();
-            final Planet planet = MetadataParser.newPlanetFromMetadata(dockedShips, mapMetadata);
+            final Planet planet = MetadataParser.newPlanetFromMetadata(dockedShips, mapMetadata, previousPlanets);
             planets.put(planet.getId(), planet);
         }
         stationaryEntities.addAll(planets.values());
+        shipGrid.build(shipTable.xs(), shipTable.ys(), shipTable.size());
+        planetList.clear();
+        planetList.addAll(planets.values());
+        planetGrid.build(planetList);
+        maxPlanetRadius = 0;
+        for (final Planet planet : planetList) {
+            maxPlanetRadius = Math.max(maxPlanetRadius, planet.getRadius());
+        }
 
         if (!mapMetadata.isEmpty()) {
             throw new IllegalStateException("Failed to parse data from Halite game engine. Please contact maintainers.");
         }
 
+        findEvents();
+        for (final MapEvent event : events) {
+            if (event.getType() == MapEvent.Type.SHIP_DESTROYED) {
+                tracker.remove(event.getId());
+            }
+        }
+        tracker.update(shipTable);
+        for (final Consumer<MapEvent> listener : listeners) {
+            for (final MapEvent event : events) {
+                listener.accept(event);
+            }
+        }
+
         return this;
     }
+
+    // in order: ships destroyed, ships in frame order, planets destroyed, planets by id
+    private void findEvents() {
+        events.clear();
+        for (final Ship ship : previousShips) {
+            if (!shipsById.containsKey(ship.getId())) {
+                events.add(new MapEvent(MapEvent.Type.SHIP_DESTROYED, ship));
+            }
+        }
+        for (final Ship ship : allShips) {
+            final Ship before = previousShipsById.get(ship.getId());
+            if (before == null) {
+                events.add(new MapEvent(MapEvent.Type.SHIP_SPAWNED, ship));
+            } else if (before.getDockingStatus() == DockingStatus.Undocked
+                    && ship.getDockingStatus() == DockingStatus.Docking) {
+                events.add(new MapEvent(MapEvent.Type.DOCKING_STARTED, ship));
+            } else if (before.getDockingStatus() == DockingStatus.Docking
+                    && ship.getDockingStatus() == DockingStatus.Docked) {
+                events.add(new MapEvent(MapEvent.Type.DOCKING_COMPLETED, ship));
+            }
+        }
+        for (final Planet planet : previousPlanets.values()) {
+            if (!planets.containsKey(planet.getId())) {
+                events.add(new MapEvent(MapEvent.Type.PLANET_DESTROYED, planet));
+            }
+        }
+        for (final Planet planet : planets.values()) {
+            final Planet before = previousPlanets.get(planet.getId());
+            if (before != null && before.getOwner() != planet.getOwner()) {
+                events.add(new MapEvent(planet.isOwned() ? MapEvent.Type.PLANET_CAPTURED : MapEvent.Type.PLANET_ABANDONED, planet));
+            }
+        }
+        if (!events.isEmpty() && Log.isDebugEnabled()) {
+            Log.debug("map events: %s", events);
+        }
+    }
 }
@@ -0,0 +1,265 @@
+package hlt2;
+
+import java.util.Arrays;
+
+/**
+ * Finds the heading closest to a target whose segment (at the full target
+ * distance) misses every obstacle, without testing the headings one by one.
+ *
+ * Each heading the search visits gets the exact segment test, from an
+ * Obstacles query that stops at the first entity it finds. That test is what
+ * the stepwise search used, so the two agree on which headings are clear.
+ * When a heading is blocked, the entity that blocks it blocks a whole interval
+ * of headings around the direction to its center: the tangent cone if the
+ * segment is long enough to reach the tangent points, otherwise the narrower
+ * cone where the segment's end gets inside the circle, and a half plane if the
+ * start is already inside. The search jumps past that interval, and past any
+ * interval found before that it runs into, so it costs one query per obstacle
+ * in the way instead of one per step.
+ *
+ * Candidate headings are generated the way the stepwise search generated them,
+ * each by turning the previous end point one step, and visited in its order:
+ * nearest first, positive side first on a tie. That only costs a little
+ * trigonometry per step, and it keeps the rounding (and so the moves)
+ * identical to the stepwise search. Not thread safe; use one per thread.
+ */
+public class HeadingSolver {
+
+	public static final int NOT_FOUND = -1;
+
+	// boundary headings to within this are left to the exact test
+	private static final double EPS = 1e-7;
+
+	/** Something on the segment from start to (endX, endY), or null; see GameMap.objectBlocking */
+	public interface Obstacles {
+		// target is the end point as an object while the heading is the target's own, else null
+		Entity blockerBetween(Position start, Position target, double endX, double endY);
+	}
+
+	private final double fudge;
+
+	private Position start, target;
+	private double startX, startY, targetX, targetY;
+	private double length, targetAngle;
+	private Obstacles obstacles;
+
+	// per side, the intervals blocked by the entities found so far that start past where the
+	// side has got to, as turns away from the target; a heap on where they start
+	private double[][] pendingLo = new double[2][16], pendingHi = new double[2][16];
+	private final int[] pending = new int[2];
+	// per side, the furthest end of the intervals it has got past the start of
+	private final double[] reach = new double[2];
+
+	// candidate end points, headings and lengths per side (0 positive, 1 negative), filled as needed
+	private double[][] candX = new double[2][0], candY = new double[2][0];
+	private double[][] candAngle = new double[2][0], candLength = new double[2][0];
+	private final int[] generated = new int[2];
+	// the next step each side tries; every one before it is blocked
+	private final int[] next = new int[2];
+
+	private double foundAngle, foundDistance;
+
+	public HeadingSolver() {
+		this(Constants.FORECAST_FUDGE_FACTOR);
+	}
+
+	/** @param fudge what the Obstacles query adds to each radius */
+	public HeadingSolver(final double fudge) {
+		this.fudge = fudge;
+	}
+
+	/** Starts a new query from start towards target */
+	public void begin(final Position start, final Position target) {
+		this.start = start;
+		this.target = target;
+		startX = start.getXPos();
+		startY = start.getYPos();
+		targetX = target.getXPos();
+		targetY = target.getYPos();
+		length = start.getDistanceTo(target);
+		targetAngle = start.orientTowardsInRad(target);
+		pending[0] = 0;
+		pending[1] = 0;
+		reach[0] = Double.NEGATIVE_INFINITY;
+		reach[1] = Double.NEGATIVE_INFINITY;
+		generated[0] = 0;
+		generated[1] = 0;
+	}
+
+	/**
+	 * @return the number of steps k (0 <= k < maxSteps) the target direction
+	 * was turned to find a heading obstacles finds nothing on, or NOT_FOUND
+	 */
+	public int solve(final int maxSteps, final double stepRad, final Obstacles obstacles) {
+		this.obstacles = obstacles;
+		if (length == 0) {
+			// every heading gives the same zero-length segment
+			return isClear(0, 0, stepRad) ? found(0, 0) : NOT_FOUND;
+		}
+		// both sides at once, nearest heading first and the positive side on a tie,
+		// so the search stops as soon as either side finds one
+		final int[] next = this.next;
+		next[0] = 0;
+		next[1] = 0;
+		for (;;) {
+			final int side = next[0] <= next[1] ? 0 : 1;
+			final int k = next[side];
+			if (k >= maxSteps) {
+				return NOT_FOUND;
+			}
+			if (isClear(side, k, stepRad)) {
+				return found(side, k);
+			}
+			final double past = skipBlocked(side, k * stepRad, maxSteps * stepRad);
+			next[side] = Math.max(k + 1, (int) Math.ceil((past - EPS) / stepRad));
+		}
+	}
+
+	/** @return heading of the last solve, in radians, as Position.orientTowardsInRad gives it */
+	public double getAngle() {
+		return foundAngle;
+	}
+
+	/** @return length of the segment along the heading of the last solve */
+	public double getDistance() {
+		return foundDistance;
+	}
+
+	// smallest turn >= from that no interval found so far covers, or beyond max; from never decreases within a side
+	private double skipBlocked(final int side, double from, final double max) {
+		final double[] lo = pendingLo[side], hi = pendingHi[side];
+		for (;;) {
+			while (pending[side] > 0 && lo[0] <= from) {
+				reach[side] = Math.max(reach[side], hi[0]);
+				popPending(side);
+			}
+			if (reach[side] - EPS > from && from <= max) {
+				from = reach[side];
+			} else {
+				return from;
+			}
+		}
+	}
+
+	private boolean isClear(final int side, final int k, final double stepRad) {
+		generate(side, k, stepRad);
+		final Entity blocker = obstacles.blockerBetween(start, k == 0 ? target : null, candX[side][k], candY[side][k]);
+		if (blocker == null) {
+			return true;
+		}
+		addBlocked(blocker);
+		return false;
+	}
+
+	/*
+	 * The interval of headings the entity blocks, as seen from each side. One
+	 * that wraps past the opposite heading also gets a copy a full turn on.
+	 */
+	private void addBlocked(final Entity entity) {
+		final double dx = entity.getXPos() - startX;
+		final double dy = entity.getYPos() - startY;
+		final double d = Math.sqrt(dx * dx + dy * dy);
+		final double r = entity.getRadius() + fudge;
+		final double half;
+		if (d <= r) {
+			half = Math.PI / 2;
+		} else if (length * length >= d * d - r * r) {
+			half = Math.asin(r / d);
+		} else {
+			final double cos = (length * length + d * d - r * r) / (2 * length * d);
+			if (cos >= 1) {
+				return;
+			}
+			half = Math.acos(cos);
+		}
+		final double center = wrap(Math.atan2(dy, dx) - targetAngle);
+		for (int side = 0; side < 2; side++) {
+			final double c = side == 0 ? center : -center;
+			pushPending(side, c - half, c + half);
+			if (c - half < 0) {
+				pushPending(side, c - half + 2 * Math.PI, c + half + 2 * Math.PI);
+			}
+		}
+	}
+
+	private void pushPending(final int side, final double intervalLo, final double intervalHi) {
+		if (pending[side] == pendingLo[side].length) {
+			pendingLo[side] = Arrays.copyOf(pendingLo[side], 2 * pending[side]);
+			pendingHi[side] = Arrays.copyOf(pendingHi[side], 2 * pending[side]);
+		}
+		final double[] lo = pendingLo[side], hi = pendingHi[side];
+		int i = pending[side]++;
+		while (i > 0 && lo[(i - 1) / 2] > intervalLo) {
+			lo[i] = lo[(i - 1) / 2];
+			hi[i] = hi[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		lo[i] = intervalLo;
+		hi[i] = intervalHi;
+	}
+
+	private void popPending(final int side) {
+		final double[] lo = pendingLo[side], hi = pendingHi[side];
+		final int n = --pending[side];
+		final double lastLo = lo[n], lastHi = hi[n];
+		int i = 0;
+		for (;;) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && lo[child + 1] < lo[child]) {
+				child++;
+			}
+			if (lo[child] >= lastLo) {
+				break;
+			}
+			lo[i] = lo[child];
+			hi[i] = hi[child];
+			i = child;
+		}
+		lo[i] = lastLo;
+		hi[i] = lastHi;
+	}
+
+	// to [-pi, pi]
+	private static double wrap(final double angle) {
+		return angle - 2 * Math.PI * Math.rint(angle / (2 * Math.PI));
+	}
+
+	// same arithmetic as the stepwise search, one step from the previous candidate
+	private void generate(final int side, final int k, final double stepRad) {
+		if (candX[side].length <= k) {
+			final int n = Math.max(k + 1, candX[side].length * 2);
+			candX[side] = Arrays.copyOf(candX[side], n);
+			candY[side] = Arrays.copyOf(candY[side], n);
+			candAngle[side] = Arrays.copyOf(candAngle[side], n);
+			candLength[side] = Arrays.copyOf(candLength[side], n);
+		}
+		if (generated[side] == 0) {
+			candX[side][0] = targetX;
+			candY[side][0] = targetY;
+			candAngle[side][0] = targetAngle;
+			candLength[side][0] = length;
+			generated[side] = 1;
+		}
+		final double turn = side == 0 ? stepRad : -stepRad;
+		for (int j = generated[side]; j <= k; j++) {
+			final double x = startX + Math.cos(candAngle[side][j - 1] + turn) * candLength[side][j - 1];
+			final double y = startY + Math.sin(candAngle[side][j - 1] + turn) * candLength[side][j - 1];
+			final double dx = startX - x;
+			final double dy = startY - y;
+			candX[side][j] = x;
+			candY[side][j] = y;
+			candLength[side][j] = Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+			candAngle[side][j] = Math.atan2(y - startY, x - startX) + 2 * Math.PI;
+		}
+		generated[side] = Math.max(generated[side], k + 1);
+	}
+
+	private int found(final int side, final int k) {
+		foundAngle = candAngle[side][k];
+		foundDistance = candLength[side][k];
+		return k;
+	}
+}
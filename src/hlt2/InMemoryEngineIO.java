@@ -0,0 +1,65 @@
+package hlt2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Engine traffic held in memory, for running a bot inside the same JVM as the
+ * game (see Simulator). The caller queues the lines the bot will read and
+ * collects the moves it sent. Not thread-safe: one game drives one instance.
+ */
+public class InMemoryEngineIO implements EngineIO {
+
+    private final ArrayDeque<String> input = new ArrayDeque<>();
+    private final ArrayList<Move> moves = new ArrayList<>();
+    private final ArrayList<String> output = new ArrayList<>();
+
+    public void push(final String line) {
+        input.addLast(line);
+    }
+
+    public void push(final String[] lines) {
+        for (final String line : lines) {
+            input.addLast(line);
+        }
+    }
+
+    /** @return the moves sent since the last call, in the order they were sent */
+    public List<Move> takeMoves() {
+        final ArrayList<Move> taken = new ArrayList<>(moves);
+        moves.clear();
+        return taken;
+    }
+
+    /** @return the plain lines (e.g. the bot name) written since the last call */
+    public List<String> takeOutput() {
+        final ArrayList<String> taken = new ArrayList<>(output);
+        output.clear();
+        return taken;
+    }
+
+    @Override
+    public void readLine(final Metadata into) {
+        final String line = input.pollFirst();
+        if (line == null) {
+            throw new IllegalStateException("bot read past the end of the queued input");
+        }
+        into.clear();
+        for (int i = 0; i < line.length(); i++) {
+            into.append((byte) line.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeLine(final String line) {
+        output.add(line);
+    }
+
+    @Override
+    public void writeMoves(final Iterable<Move> sent) {
+        for (final Move move : sent) {
+            moves.add(move);
+        }
+    }
+}
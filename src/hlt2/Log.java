@@ -1,29 +1,75 @@
 package hlt2;
 
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.Writer;
 
+/**
+ * Messages go to the log file through an AsyncWriter, so disk I/O stays off
+ * the turn's critical path. If its buffer is full, messages are dropped and
+ * counted rather than blocking the bot.
+ */
 public class Log {
 
-    private final FileWriter file;
-    private static Log instance;
+    public enum Level { DEBUG, INFO, WARN, OFF }
 
-    private Log(final FileWriter f) {
-        file = f;
+    private static final long SHUTDOWN_FLUSH_MILLIS = 500;
+
+    private static volatile Level level = parseLevel(System.getProperty("hlt.log.level"), Level.INFO);
+    private static AsyncWriter writer;
+
+    private Log() {
+    }
+
+    static void initialize(final Writer f) {
+        writer = new AsyncWriter(f, "log-writer", "[%d log messages dropped]");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_FLUSH_MILLIS)));
+    }
+
+    public static void setLevel(final Level newLevel) {
+        level = newLevel;
     }
 
-    static void initialize(final FileWriter f) {
-        instance = new Log(f);
+    public static boolean isEnabled(final Level messageLevel) {
+        return writer != null && messageLevel.compareTo(level) >= 0 && messageLevel != Level.OFF;
+    }
+
+    public static boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
     }
 
     public static void log(final String message) {
-        try {
-            instance.file.write(message);
-            instance.file.write('\n');
-            instance.file.flush();
+        log(Level.INFO, message);
+    }
+
+    public static void log(final Level messageLevel, final String message) {
+        if (isEnabled(messageLevel)) {
+            writer.enqueue(message);
         }
-        catch (IOException e) {
-            e.printStackTrace();
+    }
+
+    // the format string is only expanded if DEBUG is enabled
+    public static void debug(final String format, final Object... args) {
+        if (isDebugEnabled()) {
+            writer.enqueue(String.format(format, args));
+        }
+    }
+
+    /**
+     * Waits up to timeoutMillis for everything logged so far to reach the file.
+     */
+    public static void flush(final long timeoutMillis) {
+        if (writer != null) {
+            writer.awaitWritten(timeoutMillis);
+        }
+    }
+
+    private static Level parseLevel(final String name, final Level fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
         }
     }
 }
@@ -0,0 +1,48 @@
+package hlt2;
+
+/**
+ * Something that changed between two frames, as GameMap.updateMap found it.
+ * The entity is the one from the new frame, or for something destroyed the
+ * last one seen.
+ */
+public class MapEvent {
+
+	public enum Type {
+		SHIP_SPAWNED,
+		SHIP_DESTROYED,
+		DOCKING_STARTED,
+		DOCKING_COMPLETED,
+		PLANET_CAPTURED,
+		PLANET_ABANDONED, // its last docked ship was destroyed or undocked
+		PLANET_DESTROYED
+	}
+
+	private final Type type;
+	private final Entity entity;
+
+	public MapEvent(final Type type, final Entity entity) {
+		this.type = type;
+		this.entity = entity;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Entity getEntity() {
+		return entity;
+	}
+
+	public int getId() {
+		return entity.getId();
+	}
+
+	public int getOwner() {
+		return entity.getOwner();
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + entity.getId() + " (owner " + entity.getOwner() + ")";
+	}
+}
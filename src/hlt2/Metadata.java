@@ -1,18 +1,180 @@
 package hlt2;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One line of engine input held as raw bytes. The buffer is reused from turn
+ * to turn, and ints/doubles are parsed straight out of it, so reading a frame
+ * creates no per-token Strings.
+ */
 public class Metadata {
-    final private String[] metadata;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // below this many significant digits, mantissa / 10^k is exact before the
+    // one (correctly rounded) division, so the result matches Double.parseDouble
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private byte[] buffer;
+    private int length = 0;
     private int index = 0;
 
-    public Metadata(final String[] metadata) {
-        this.metadata = metadata;
+    public Metadata() {
+        buffer = new byte[1 << 16];
+    }
+
+    public Metadata(final String line) {
+        buffer = line.getBytes(StandardCharsets.ISO_8859_1);
+        length = buffer.length;
+    }
+
+    void clear() {
+        length = 0;
+        index = 0;
+    }
+
+    void append(final byte b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = b;
+    }
+
+    // raw line as a length-prefixed record, for replay files
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(length);
+        out.write(buffer, 0, length);
+    }
+
+    void readFrom(final DataInput in) throws IOException {
+        final int n = in.readInt();
+        if (buffer.length < n) {
+            buffer = new byte[Math.max(n, buffer.length * 2)];
+        }
+        in.readFully(buffer, 0, n);
+        length = n;
+        index = 0;
+    }
+
+    void copyFrom(final Metadata other) {
+        if (buffer.length < other.length) {
+            buffer = new byte[other.length];
+        }
+        System.arraycopy(other.buffer, 0, buffer, 0, other.length);
+        length = other.length;
+        index = 0;
+    }
+
+    public int popInt() {
+        final int start = nextToken();
+        int i = start;
+        boolean negative = false;
+        if (i < length && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long value = 0;
+        final int digitsStart = i;
+        for (; i < length && buffer[i] > ' '; i++) {
+            final int d = buffer[i] - '0';
+            if (d < 0 || d > 9 || i - digitsStart > 10) {
+                return Integer.parseInt(tokenString(start));
+            }
+            value = value * 10 + d;
+        }
+        if (i == digitsStart) {
+            return Integer.parseInt(tokenString(start));
+        }
+        index = i;
+        value = negative ? -value : value;
+        if (value != (int) value) {
+            throw new NumberFormatException("int out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    public double popDouble() {
+        final int start = nextToken();
+        int i = start;
+        boolean negative = false;
+        if (i < length && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < length && buffer[i] > ' '; i++) {
+            final byte b = buffer[i];
+            if (b == '.' && !seenPoint) {
+                seenPoint = true;
+                continue;
+            }
+            final int d = b - '0';
+            if (d < 0 || d > 9) {
+                // exponents, NaN, Infinity and anything else odd
+                return Double.parseDouble(tokenString(start));
+            }
+            seenDigit = true;
+            if (seenPoint) {
+                fractionDigits++;
+            }
+            if (mantissa != 0 || d != 0) {
+                significantDigits++;
+            }
+            if (significantDigits > MAX_FAST_DIGITS) {
+                return Double.parseDouble(tokenString(start));
+            }
+            mantissa = mantissa * 10 + d;
+        }
+        if (!seenDigit || fractionDigits >= POW10.length) {
+            return Double.parseDouble(tokenString(start));
+        }
+        index = i;
+        final double value = mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
     }
 
     public String pop() {
-        return metadata[index++];
+        final int start = nextToken();
+        int i = start;
+        while (i < length && buffer[i] > ' ') i++;
+        index = i;
+        return new String(buffer, start, i - start, StandardCharsets.ISO_8859_1);
     }
 
     public boolean isEmpty() {
-        return index == metadata.length;
+        skipSeparators();
+        return index == length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private int nextToken() {
+        skipSeparators();
+        if (index == length) {
+            throw new IllegalStateException("Ran out of tokens in engine input.");
+        }
+        return index;
+    }
+
+    private void skipSeparators() {
+        while (index < length && buffer[index] <= ' ') index++;
+    }
+
+    // slow path only; leaves index past the token
+    private String tokenString(final int start) {
+        index = start;
+        return pop();
     }
 }
@@ -4,48 +4,78 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class MetadataParser {
 
-    public static void populateShipList(final List<Ship> shipsOutput, final int owner, final Metadata shipsMetadata) {
-        final long numberOfShips = Long.parseLong(shipsMetadata.pop());
+    // fills one table row per ship and builds the Ship facade from that row; a ship in
+    // previous (by id) that has not changed is reused instead of built again
+    public static void populateShipList(final List<Ship> shipsOutput, final ShipTable shipTable,
+                                        final int owner, final Metadata shipsMetadata,
+                                        final Map<Integer, Ship> previous) {
+        final int numberOfShips = shipsMetadata.popInt();
 
         for(int i = 0; i < numberOfShips; ++i) {
-            shipsOutput.add(newShipFromMetadata(owner, shipsMetadata));
+            final int row = newShipRowFromMetadata(shipTable, owner, shipsMetadata);
+            Ship ship = previous.get(shipTable.getId(row));
+            if (ship == null || !isUnchanged(ship, shipTable, row)) {
+                ship = new Ship(owner, shipTable.getId(row), shipTable.getX(row), shipTable.getY(row),
+                        shipTable.getHealth(row), shipTable.getDockingStatus(row), shipTable.getDockedPlanet(row),
+                        shipTable.getDockingProgress(row), shipTable.getWeaponCooldown(row));
+            }
+            shipTable.setShip(row, ship);
+            shipsOutput.add(ship);
         }
     }
 
-    private static Ship newShipFromMetadata(final int owner, final Metadata metadata) {
-        final int id = Integer.parseInt(metadata.pop());
-        final double xPos = Double.parseDouble(metadata.pop());
-        final double yPos = Double.parseDouble(metadata.pop());
-        final int health = Integer.parseInt(metadata.pop());
+    private static boolean isUnchanged(final Ship ship, final ShipTable shipTable, final int row) {
+        return ship.getOwner() == shipTable.getOwner(row)
+                && Double.compare(ship.getXPos(), shipTable.getX(row)) == 0
+                && Double.compare(ship.getYPos(), shipTable.getY(row)) == 0
+                && ship.getHealth() == shipTable.getHealth(row)
+                && ship.getDockingStatus() == shipTable.getDockingStatus(row)
+                && ship.getDockedPlanet() == shipTable.getDockedPlanet(row)
+                && ship.getDockingProgress() == shipTable.getDockingProgress(row)
+                && ship.getWeaponCooldown() == shipTable.getWeaponCooldown(row);
+    }
+
+    private static int newShipRowFromMetadata(final ShipTable shipTable, final int owner, final Metadata metadata) {
+        final int id = metadata.popInt();
+        final double xPos = metadata.popDouble();
+        final double yPos = metadata.popDouble();
+        final int health = metadata.popInt();
 
         // Ignoring velocity(x,y) which is always (0,0) in current version.
-        metadata.pop();
-        metadata.pop();
+        metadata.popDouble();
+        metadata.popDouble();
 
-        final Ship.DockingStatus dockingStatus = Ship.DockingStatus.values()[Integer.parseInt(metadata.pop())];
-        final int dockedPlanet = Integer.parseInt(metadata.pop());
-        final int dockingProgress = Integer.parseInt(metadata.pop());
-        final int weaponCooldown = Integer.parseInt(metadata.pop());
+        final int dockingStatus = metadata.popInt();
+        final int dockedPlanet = metadata.popInt();
+        final int dockingProgress = metadata.popInt();
+        final int weaponCooldown = metadata.popInt();
 
-        return new Ship(owner, id, xPos, yPos, health, dockingStatus, dockedPlanet, dockingProgress, weaponCooldown);
+        return shipTable.add(id, owner, xPos, yPos, health, dockingStatus, dockedPlanet, dockingProgress, weaponCooldown);
     }
 
     public static Planet newPlanetFromMetadata(final List<Integer> dockedShips, final Metadata metadata) {
-        final int id = Integer.parseInt(metadata.pop());
-        final double xPos = Double.parseDouble(metadata.pop());
-        final double yPos = Double.parseDouble(metadata.pop());
-        final int health = Integer.parseInt(metadata.pop());
-
-        final double radius = Double.parseDouble(metadata.pop());
-        final int dockingSpots = Integer.parseInt(metadata.pop());
-        final int currentProduction = Integer.parseInt(metadata.pop());
-        final int remainingProduction = Integer.parseInt(metadata.pop());
-
-        final int hasOwner = Integer.parseInt(metadata.pop());
-        final int ownerCandidate = Integer.parseInt(metadata.pop());
+        return newPlanetFromMetadata(dockedShips, metadata, Collections.emptyMap());
+    }
+
+    // as above, but returns the planet in previous (by id) if it has not changed
+    public static Planet newPlanetFromMetadata(final List<Integer> dockedShips, final Metadata metadata,
+                                               final Map<Integer, Planet> previous) {
+        final int id = metadata.popInt();
+        final double xPos = metadata.popDouble();
+        final double yPos = metadata.popDouble();
+        final int health = metadata.popInt();
+
+        final double radius = metadata.popDouble();
+        final int dockingSpots = metadata.popInt();
+        final int currentProduction = metadata.popInt();
+        final int remainingProduction = metadata.popInt();
+
+        final int hasOwner = metadata.popInt();
+        final int ownerCandidate = metadata.popInt();
         final int owner;
         if (hasOwner == 1) {
             owner = ownerCandidate;
@@ -53,20 +83,28 @@ public class MetadataParser {
             owner = -1; // ignore ownerCandidate
         }
 
-        final int dockedShipCount = Integer.parseInt(metadata.pop());
+        final int dockedShipCount = metadata.popInt();
         for (int i = 0; i < dockedShipCount; ++i) {
-            dockedShips.add(Integer.parseInt(metadata.pop()));
+            dockedShips.add(metadata.popInt());
         }
 
+        final Planet planet = previous.get(id);
+        if (planet != null && planet.getOwner() == owner && planet.getHealth() == health
+                && planet.getCurrentProduction() == currentProduction
+                && planet.getRemainingProduction() == remainingProduction
+                && planet.getDockedShips().equals(dockedShips)) {
+            // position, radius and docking spots never change
+            return planet;
+        }
         return new Planet(owner, id, xPos, yPos, health, radius, dockingSpots,
                           currentProduction, remainingProduction, dockedShips);
     }
 
     public static int parsePlayerNum(final Metadata metadata) {
-        return Integer.parseInt(metadata.pop());
+        return metadata.popInt();
     }
 
     public static int parsePlayerId(final Metadata metadata) {
-        return Integer.parseInt(metadata.pop());
+        return metadata.popInt();
     }
 }
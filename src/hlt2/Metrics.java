@@ -0,0 +1,163 @@
+package hlt2;
+
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per-turn performance counters, written as one JSON object per line through
+ * an AsyncWriter, like the log. Stage timings come from the TurnClock; the hot
+ * paths bump the counters here. Each of Parallel's workers counts into its
+ * own Counters, and the bot's thread into another, which endTurn sums, so the
+ * counts are exact however many threads navigate.
+ */
+public class Metrics {
+
+	private static final long SHUTDOWN_FLUSH_MILLIS = 500;
+
+	private static AsyncWriter out;
+	private static boolean enabled = false;
+
+	// hot-path counters of one thread, reset every turn
+	static final class Counters {
+		long segmentTests;
+		long shipPairTests;
+		long navCalls;
+		long navNanos;
+		long navSegmentTestsMax;
+	}
+
+	// every thread's counters; endTurn reads them after the workers have joined
+	private static final List<Counters> allCounters = new CopyOnWriteArrayList<>();
+	// the bot's own thread's, and those of any other thread that is not one of Parallel's workers
+	private static final Counters mainCounters = newCounters();
+
+	private static long pathSearchesBefore;
+	private static long allocatedAtTurnStart;
+	private static long gcCountAtTurnStart;
+	private static long gcMillisAtTurnStart;
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+	private Metrics() {
+	}
+
+	static void initialize(final Writer w) {
+		out = new AsyncWriter(w, "metrics-writer", null);
+		enabled = true;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> out.awaitWritten(SHUTDOWN_FLUSH_MILLIS)));
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	static void beginTurn() {
+		for (Counters c : allCounters) {
+			c.segmentTests = 0;
+			c.shipPairTests = 0;
+			c.navCalls = 0;
+			c.navNanos = 0;
+			c.navSegmentTestsMax = 0;
+		}
+		if (!enabled) {
+			return;
+		}
+		allocatedAtTurnStart = allocatedBytes();
+		gcCountAtTurnStart = gcCount();
+		gcMillisAtTurnStart = gcMillis();
+	}
+
+	static Counters newCounters() {
+		final Counters c = new Counters();
+		allCounters.add(c);
+		return c;
+	}
+
+	/** @return this thread's counters, for the hot paths to bump */
+	static Counters counters() {
+		final Thread t = Thread.currentThread();
+		return t instanceof Parallel.Worker ? ((Parallel.Worker) t).counters : mainCounters;
+	}
+
+	/** @return segment tests this thread has made this turn */
+	public static long segmentTests() {
+		return counters().segmentTests;
+	}
+
+	/**
+	 * Records one navigation call that started at startNanos (System.nanoTime)
+	 * when segmentTests() read segmentTestsAtStart.
+	 */
+	public static void recordNavigation(final long startNanos, final long segmentTestsAtStart) {
+		final Counters c = counters();
+		final long tests = c.segmentTests - segmentTestsAtStart;
+		c.navCalls++;
+		c.navNanos += System.nanoTime() - startNanos;
+		if (tests > c.navSegmentTestsMax) {
+			c.navSegmentTestsMax = tests;
+		}
+	}
+
+	/** @param pathSearches PlanetGraph searches run so far in the game; the line gets this turn's */
+	public static void endTurn(final int turn, final TurnClock clock, final int shipCount, final long pathSearches) {
+		final long turnPathSearches = pathSearches - pathSearchesBefore;
+		pathSearchesBefore = pathSearches;
+		if (!enabled) {
+			return;
+		}
+		final Counters sum = new Counters();
+		for (Counters c : allCounters) {
+			sum.segmentTests += c.segmentTests;
+			sum.shipPairTests += c.shipPairTests;
+			sum.navCalls += c.navCalls;
+			sum.navNanos += c.navNanos;
+			sum.navSegmentTestsMax = Math.max(sum.navSegmentTestsMax, c.navSegmentTestsMax);
+		}
+		final StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"turn\":").append(turn)
+				.append(",\"ships\":").append(shipCount)
+				.append(",\"totalUs\":").append(clock.elapsedNanos() / 1_000)
+				.append(",\"stagesUs\":{");
+		for (int i = 0; i < clock.getStageCount(); i++) {
+			if (i > 0) sb.append(',');
+			sb.append('"').append(clock.getStageName(i)).append("\":").append(clock.getStageNanos(i) / 1_000);
+		}
+		sb.append("},\"navCalls\":").append(sum.navCalls)
+				.append(",\"navUs\":").append(sum.navNanos / 1_000)
+				.append(",\"segmentTests\":").append(sum.segmentTests)
+				.append(",\"segmentTestsPerNavMax\":").append(sum.navSegmentTestsMax)
+				.append(",\"shipPairTests\":").append(sum.shipPairTests)
+				.append(",\"pathSearches\":").append(turnPathSearches)
+				.append(",\"allocatedBytes\":").append(allocatedBytes() - allocatedAtTurnStart)
+				.append(",\"gcCount\":").append(gcCount() - gcCountAtTurnStart)
+				.append(",\"gcMs\":").append(gcMillis() - gcMillisAtTurnStart)
+				.append('}');
+		out.enqueue(sb.toString());
+	}
+
+	// bytes allocated by the bot's thread, or -1 if the JVM can't tell us
+	private static long allocatedBytes() {
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : gcBeans) count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : gcBeans) millis += Math.max(0, gc.getCollectionTime());
+		return millis;
+	}
+}
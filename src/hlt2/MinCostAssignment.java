@@ -0,0 +1,257 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Min-cost assignment of rows (ships) to columns (tasks) that each take a
+ * limited number of rows. Any row may instead take its own outside option
+ * (e.g. its cheapest task with unlimited room).
+ *
+ * This is a min-cost flow, solved by successive shortest paths: rows are
+ * added one at a time, and each is routed along a shortest path (Dijkstra on
+ * reduced costs) that may shift already-placed rows between columns or out
+ * to their outside option. The column potentials (the duals, i.e. what a
+ * place in that column is worth) are kept per column key and seed the next
+ * solve. Any non-negative potentials are dual-feasible, so warm-starting
+ * never costs optimality. Close potentials only make each search stop sooner.
+ *
+ * Cost is O(rows * (rows * cols + cols^2)) in the worst case. Rows not yet
+ * placed at the deadline take their outside option, so the result is always
+ * feasible.
+ */
+public class MinCostAssignment {
+
+	public interface CostFunction {
+		/** @return cost of putting row in column, or POSITIVE_INFINITY if not allowed */
+		double cost(int row, int col);
+	}
+
+	public static final int OUTSIDE = -1;
+	private static final int UNPLACED = -2;
+
+	private final HashMap<Long, Double> warmPotentials = new HashMap<>();
+
+	// grow-only scratch, reused between turns
+	private double[] cost = new double[0]; // row-major
+	private double[] outside = new double[0];
+	private double[] rowPotential = new double[0];
+	private double[] rowDist = new double[0];
+	private int[] rowPred = new int[0]; // column the row was reached from, or -1 for the new row
+	private int[] rowCol = new int[0]; // column, OUTSIDE, or UNPLACED
+	private double[] colPotential = new double[0];
+	private double[] colDist = new double[0];
+	private int[] colPred = new int[0]; // row the column was reached from
+	private boolean[] colDone = new boolean[0];
+	private int[] load = new int[0];
+	private double sinkPotential;
+
+	private int numRows, numCols;
+	private int[] capacity;
+	private double sinkDist;
+	private int sinkPredRow, sinkPredCol;
+	private int placedRows;
+
+	/** @return how many rows were routed before the deadline on the last solve */
+	public int getLastPlacedRows() {
+		return placedRows;
+	}
+
+	/**
+	 * @param capacity how many rows each column takes
+	 * @param colKeys stable identity of each column across turns, for warm starts
+	 * @param outsideCost cost of each row's outside option (must be finite)
+	 * @param deadlineNanos System.nanoTime() after which remaining rows take their outside option
+	 * @return for each row its column, or OUTSIDE
+	 */
+	public int[] solve(final int numRows, final int numCols, final CostFunction costs,
+			final int[] capacity, final long[] colKeys, final double[] outsideCost, final long deadlineNanos) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.capacity = capacity;
+		prepare(costs, colKeys, outsideCost);
+
+		placedRows = 0;
+		for (int r = 0; r < numRows; r++) {
+			if (System.nanoTime() - deadlineNanos > 0) {
+				break;
+			}
+			route(r);
+			placedRows++;
+		}
+
+		final int[] result = new int[numRows];
+		for (int r = 0; r < numRows; r++) {
+			result[r] = rowCol[r] >= 0 ? rowCol[r] : OUTSIDE;
+		}
+		saveWarmPotentials(colKeys);
+		return result;
+	}
+
+	private void prepare(final CostFunction costs, final long[] colKeys, final double[] outsideCost) {
+		if (cost.length < numRows * numCols) {
+			cost = new double[numRows * numCols * 2];
+		}
+		if (rowCol.length < numRows) {
+			outside = new double[numRows * 2];
+			rowPotential = new double[numRows * 2];
+			rowDist = new double[numRows * 2];
+			rowPred = new int[numRows * 2];
+			rowCol = new int[numRows * 2];
+		}
+		if (load.length < numCols) {
+			colPotential = new double[numCols * 2];
+			colDist = new double[numCols * 2];
+			colPred = new int[numCols * 2];
+			colDone = new boolean[numCols * 2];
+			load = new int[numCols * 2];
+		}
+
+		for (int r = 0; r < numRows; r++) {
+			outside[r] = outsideCost[r];
+			rowCol[r] = UNPLACED;
+			for (int c = 0; c < numCols; c++) {
+				cost[r * numCols + c] = costs.cost(r, c);
+			}
+		}
+		// columns must not start below the sink, or their edge to it would be negative
+		sinkPotential = 0;
+		for (int c = 0; c < numCols; c++) {
+			final Double warm = warmPotentials.get(colKeys[c]);
+			colPotential[c] = warm == null ? 0 : Math.max(0, warm);
+			load[c] = 0;
+		}
+	}
+
+	/*
+	 * One Dijkstra from row r to the sink, then augment along the path found.
+	 * The reduced cost of an edge u->v is c + pi(u) - pi(v), and it stays
+	 * non-negative. The edges are:
+	 *   row->col   cost
+	 *   row->sink  outside cost
+	 *   col->sink  0, while the column has room
+	 *   col->row   -cost, for rows currently in the column
+	 * The sink is never expanded, so rows on their outside option stay there.
+	 * That is still optimal, since the potentials rule out negative cycles.
+	 */
+	private void route(final int r) {
+		// the new row's potential makes all of its edges non-negative
+		double pr = sinkPotential - outside[r];
+		for (int c = 0; c < numCols; c++) {
+			pr = Math.max(pr, colPotential[c] - cost[r * numCols + c]);
+		}
+		rowPotential[r] = pr;
+
+		Arrays.fill(rowDist, 0, numRows, Double.POSITIVE_INFINITY);
+		Arrays.fill(colDist, 0, numCols, Double.POSITIVE_INFINITY);
+		Arrays.fill(colDone, 0, numCols, false);
+		sinkDist = Double.POSITIVE_INFINITY;
+		sinkPredRow = -1;
+		sinkPredCol = -1;
+
+		rowDist[r] = 0;
+		rowPred[r] = -1;
+		relaxRow(r);
+		for (;;) {
+			// settle the nearest column, unless the sink is no farther
+			int next = -1;
+			double best = sinkDist;
+			for (int c = 0; c < numCols; c++) {
+				if (!colDone[c] && colDist[c] < best) {
+					best = colDist[c];
+					next = c;
+				}
+			}
+			if (next == -1) {
+				break;
+			}
+			colDone[next] = true;
+			if (load[next] < capacity[next]) {
+				final double d = colDist[next] + colPotential[next] - sinkPotential;
+				if (d < sinkDist) {
+					sinkDist = d;
+					sinkPredCol = next;
+					sinkPredRow = -1;
+				}
+			}
+			for (int i = 0; i < numRows; i++) {
+				if (rowCol[i] == next) {
+					rowDist[i] = colDist[next] - cost[i * numCols + next] + colPotential[next] - rowPotential[i];
+					rowPred[i] = next;
+					relaxRow(i);
+				}
+			}
+		}
+
+		// shift potentials so the path just found is tight and every edge stays non-negative
+		for (int c = 0; c < numCols; c++) {
+			colPotential[c] += Math.min(colDist[c], sinkDist);
+		}
+		for (int i = 0; i < numRows; i++) {
+			if (rowCol[i] != UNPLACED || i == r) {
+				rowPotential[i] += Math.min(rowDist[i], sinkDist);
+			}
+		}
+		sinkPotential += sinkDist;
+
+		augment();
+	}
+
+	private void relaxRow(final int i) {
+		final double d = rowDist[i];
+		final double pi = rowPotential[i];
+		if (rowCol[i] != OUTSIDE) {
+			final double viaOutside = d + outside[i] + pi - sinkPotential;
+			if (viaOutside < sinkDist) {
+				sinkDist = viaOutside;
+				sinkPredRow = i;
+				sinkPredCol = -1;
+			}
+		}
+		final int own = rowCol[i];
+		for (int c = 0; c < numCols; c++) {
+			final double edge = cost[i * numCols + c];
+			if (colDone[c] || c == own || edge == Double.POSITIVE_INFINITY) {
+				continue;
+			}
+			final double dc = d + edge + pi - colPotential[c];
+			if (dc < colDist[c]) {
+				colDist[c] = dc;
+				colPred[c] = i;
+			}
+		}
+	}
+
+	// walk the path back from the sink; only the column that feeds the sink gains a row
+	private void augment() {
+		int c;
+		if (sinkPredCol >= 0) {
+			c = sinkPredCol;
+			load[c]++;
+		} else {
+			final int i = sinkPredRow;
+			c = rowPred[i];
+			rowCol[i] = OUTSIDE;
+			if (c < 0) {
+				return;
+			}
+		}
+		for (;;) {
+			final int i = colPred[c];
+			final int prev = rowPred[i];
+			rowCol[i] = c;
+			if (prev < 0) {
+				return;
+			}
+			c = prev;
+		}
+	}
+
+	// what a place in each column was worth, relative to the sink; dropped for columns not seen this turn
+	private void saveWarmPotentials(final long[] colKeys) {
+		warmPotentials.clear();
+		for (int c = 0; c < numCols; c++) {
+			warmPotentials.put(colKeys[c], colPotential[c] - sinkPotential);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package hlt2;
+
+import java.util.Arrays;
+
+/**
+ * Groups thrust moves that could interfere: two moves are linked if the ships
+ * collide on the way (Collision.twoShipCollide) or start or end closer than a
+ * given distance. The groups are the connected sets of links.
+ *
+ * Only pairs whose swept boxes overlap can be linked, where a move's box
+ * covers its start and end grown by half the distance. Those pairs are found
+ * with sweep and prune: boxes sorted by their left edge, each checked against
+ * the boxes still open at that edge. The cost follows the number of nearby
+ * pairs rather than all pairs. Candidates are then tested in the same order
+ * as a plain loop over all pairs, so the groups (down to which member ends up
+ * the representative) are the same as that loop's.
+ *
+ * Not thread safe; scratch arrays are reused between calls.
+ */
+public class MoveGroups {
+
+	// keeps every left edge positive; no box reaches further off the map than this
+	private static final double OFFSET = 64;
+	// left edges are rounded down to this fraction, which only makes boxes larger
+	private static final double SCALE = 1024;
+	private static final int INDEX_BITS = 20;
+	// twoShipCollide's circle around the other ship, fudge included
+	private static final double PAIR_REACH = 2 * Constants.SHIP_RADIUS + Constants.SHIP_RADIUS / 1000.0;
+
+	private int moves = 0;
+	private int[] id = new int[16];
+	private double[] x = new double[16], y = new double[16], dx = new double[16], dy = new double[16];
+
+	// sweep scratch
+	private long[] order = new long[16];
+	private double[] minX = new double[16], maxX = new double[16], minY = new double[16], maxY = new double[16];
+	private int[] open = new int[16];
+	private long[] pairs = new long[64];
+	private int numPairs;
+
+	public void clear() {
+		moves = 0;
+	}
+
+	/** Adds the move of ship id from (x, y) by (dx, dy); moves are numbered in the order they are added */
+	public void add(final int shipId, final double x, final double y, final double dx, final double dy) {
+		if (moves == this.x.length) {
+			grow(moves * 2);
+		}
+		this.id[moves] = shipId;
+		this.x[moves] = x;
+		this.y[moves] = y;
+		this.dx[moves] = dx;
+		this.dy[moves] = dy;
+		moves++;
+	}
+
+	public int size() {
+		return moves;
+	}
+
+	/** @return how many candidate pairs the last group() call found */
+	public int getCandidatePairs() {
+		return numPairs;
+	}
+
+	/** Links moves that collide, or start or end closer than near */
+	public DisjointSet group(final double near) {
+		findCandidates(Math.max(near, PAIR_REACH) / 2);
+		final DisjointSet sets = DisjointSet.makeSingletons(moves);
+		for (int k = 0; k < numPairs; k++) {
+			final int i = (int) (pairs[k] >>> 32);
+			final int j = (int) pairs[k];
+			if (sets.find(i) != sets.find(j) && linked(i, j, near)) {
+				sets.union(i, j);
+			}
+		}
+		return sets;
+	}
+
+	/** group() without the broad phase; every pair is tested */
+	public DisjointSet groupAllPairs(final double near) {
+		final DisjointSet sets = DisjointSet.makeSingletons(moves);
+		for (int i = 0; i < moves; i++) {
+			for (int j = i + 1; j < moves; j++) {
+				if (sets.find(i) != sets.find(j) && linked(i, j, near)) {
+					sets.union(i, j);
+				}
+			}
+		}
+		return sets;
+	}
+
+	private boolean linked(final int i, final int j, final double near) {
+		if (Collision.twoShipCollide(x[i], y[i], dx[i], dy[i], x[j], y[j], dx[j], dy[j])) {
+			Log.debug("ships %d and %d may collide", id[i], id[j]);
+			return true;
+		}
+		if (distance(x[i], y[i], x[j], y[j]) < near) {
+			Log.debug("ships %d and %d start near each other", id[i], id[j]);
+			return true;
+		}
+		if (distance(x[i] + dx[i], y[i] + dy[i], x[j] + dx[j], y[j] + dy[j]) < near) {
+			Log.debug("ships %d and %d end near each other", id[i], id[j]);
+			return true;
+		}
+		return false;
+	}
+
+	// as Position.getDistanceTo, so the thresholds fall where they always did
+	private static double distance(final double x1, final double y1, final double x2, final double y2) {
+		final double dx = x1 - x2;
+		final double dy = y1 - y2;
+		return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+	}
+
+	// every pair (i < j) whose boxes, grown by margin, overlap; sorted by i, then j
+	private void findCandidates(final double margin) {
+		numPairs = 0;
+		for (int i = 0; i < moves; i++) {
+			final double left = Math.floor((Math.min(x[i], x[i] + dx[i]) - margin + OFFSET) * SCALE);
+			minX[i] = left / SCALE - OFFSET;
+			maxX[i] = Math.max(x[i], x[i] + dx[i]) + margin;
+			minY[i] = Math.min(y[i], y[i] + dy[i]) - margin;
+			maxY[i] = Math.max(y[i], y[i] + dy[i]) + margin;
+			order[i] = ((long) left << INDEX_BITS) | i;
+		}
+		Arrays.sort(order, 0, moves);
+
+		int numOpen = 0;
+		for (int k = 0; k < moves; k++) {
+			final int i = (int) (order[k] & ((1 << INDEX_BITS) - 1));
+			int kept = 0;
+			for (int o = 0; o < numOpen; o++) {
+				final int j = open[o];
+				if (maxX[j] < minX[i]) {
+					continue; // closed: no later box starts left of this one
+				}
+				open[kept++] = j;
+				if (minY[i] <= maxY[j] && minY[j] <= maxY[i]) {
+					addPair(Math.min(i, j), Math.max(i, j));
+				}
+			}
+			numOpen = kept;
+			open[numOpen++] = i;
+		}
+		Arrays.sort(pairs, 0, numPairs);
+	}
+
+	private void addPair(final int i, final int j) {
+		if (numPairs == pairs.length) {
+			pairs = Arrays.copyOf(pairs, numPairs * 2);
+		}
+		pairs[numPairs++] = ((long) i << 32) | j;
+	}
+
+	private void grow(final int n) {
+		id = Arrays.copyOf(id, n);
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		dx = Arrays.copyOf(dx, n);
+		dy = Arrays.copyOf(dy, n);
+		order = new long[n];
+		minX = new double[n];
+		maxX = new double[n];
+		minY = new double[n];
+		maxY = new double[n];
+		open = new int[n];
+	}
+}
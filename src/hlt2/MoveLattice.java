@@ -0,0 +1,136 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Every legal thrust: integer angles 0-359 and thrusts 0 to MAX_SPEED, 2880
+ * moves in all. Their displacements are worked out once, with the same
+ * arithmetic ThrustMove used, so a lookup gives exactly the value the
+ * Math.cos and Math.sin calls would have.
+ *
+ * Moves are numbered thrust * ANGLES + angle. For searching the moves around
+ * a planned one, nearest(plannedThrust, k) lists every move no faster than
+ * the plan, relative to the planned angle, ordered by how close its end point
+ * lands to the plan's: the first one that passes a test is the closest legal
+ * move that does. Turning by the same amount either way counts as equally
+ * close.
+ */
+public final class MoveLattice {
+
+	public static final int ANGLES = 360;
+	public static final int THRUSTS = Constants.MAX_SPEED + 1;
+	public static final int SIZE = ANGLES * THRUSTS;
+
+	private static final double[] COS = new double[ANGLES], SIN = new double[ANGLES];
+	private static final double[] DX = new double[SIZE], DY = new double[SIZE];
+	// per planned thrust: moves as turns away from the planned angle, nearest end point first
+	private static final int[][] NEAREST = new int[THRUSTS][];
+
+	static {
+		for (int a = 0; a < ANGLES; a++) {
+			COS[a] = Math.cos(a * Math.PI / 180);
+			SIN[a] = Math.sin(a * Math.PI / 180);
+		}
+		for (int t = 0; t < THRUSTS; t++) {
+			for (int a = 0; a < ANGLES; a++) {
+				DX[t * ANGLES + a] = t * COS[a];
+				DY[t * ANGLES + a] = t * SIN[a];
+			}
+		}
+		for (int planned = 0; planned < THRUSTS; planned++) {
+			NEAREST[planned] = nearestOrder(planned);
+		}
+	}
+
+	private MoveLattice() {
+	}
+
+	/*
+	 * Every move up to the planned thrust once (a zero thrust only at angle
+	 * 0), by squared distance from the plan's end point; ties go to the higher
+	 * thrust, then the smaller turn, then the positive one.
+	 */
+	private static int[] nearestOrder(final int planned) {
+		final Integer[] moves = new Integer[ANGLES * planned + 1];
+		final double[] distSq = new double[SIZE];
+		int n = 0;
+		for (int t = 0; t <= planned; t++) {
+			for (int a = 0; a < (t == 0 ? 1 : ANGLES); a++) {
+				// the same for a turn either way, so ties stay ties
+				final double cos = COS[Math.min(a, ANGLES - a)];
+				distSq[t * ANGLES + a] = (double) t * t + (double) planned * planned - 2.0 * t * planned * cos;
+				moves[n++] = t * ANGLES + a;
+			}
+		}
+		Arrays.sort(moves, Comparator
+				.comparingDouble((Integer m) -> distSq[m])
+				.thenComparingInt(m -> -thrust(m))
+				.thenComparingInt(m -> Math.min(angle(m), ANGLES - angle(m)))
+				.thenComparingInt(m -> angle(m) <= ANGLES / 2 ? 0 : 1));
+		final int[] order = new int[n];
+		for (int k = 0; k < n; k++) {
+			order[k] = moves[k];
+		}
+		return order;
+	}
+
+	public static boolean isLegal(final int angleDeg, final int thrust) {
+		return angleDeg >= 0 && angleDeg < ANGLES && thrust >= 0 && thrust < THRUSTS;
+	}
+
+	public static int index(final int angleDeg, final int thrust) {
+		return thrust * ANGLES + angleDeg;
+	}
+
+	public static int angle(final int move) {
+		return move % ANGLES;
+	}
+
+	public static int thrust(final int move) {
+		return move / ANGLES;
+	}
+
+	public static double dx(final int move) {
+		return DX[move];
+	}
+
+	public static double dy(final int move) {
+		return DY[move];
+	}
+
+	/** x displacement of a thrust; computed directly if the move is not legal */
+	public static double dx(final int angleDeg, final int thrust) {
+		if (isLegal(angleDeg, thrust)) {
+			return DX[thrust * ANGLES + angleDeg];
+		}
+		return thrust * Math.cos(angleDeg * Math.PI / 180);
+	}
+
+	/** y displacement of a thrust; computed directly if the move is not legal */
+	public static double dy(final int angleDeg, final int thrust) {
+		if (isLegal(angleDeg, thrust)) {
+			return DY[thrust * ANGLES + angleDeg];
+		}
+		return thrust * Math.sin(angleDeg * Math.PI / 180);
+	}
+
+	/** @return the number of moves nearest() lists for this thrust (zero thrust once) */
+	public static int nearestCount(final int plannedThrust) {
+		return NEAREST[plannedThrust].length;
+	}
+
+	/**
+	 * The k-th closest move to a plan of plannedThrust, as a move whose angle
+	 * is the turn from the planned angle; see rotate().
+	 */
+	public static int nearest(final int plannedThrust, final int k) {
+		return NEAREST[plannedThrust][k];
+	}
+
+	/** @return move turned by angleDeg; a zero thrust stays at angle 0 */
+	public static int rotate(final int move, final int angleDeg) {
+		final int t = thrust(move);
+		return t == 0 ? 0 : t * ANGLES + (angle(move) + angleDeg) % ANGLES;
+	}
+}
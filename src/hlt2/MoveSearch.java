@@ -0,0 +1,466 @@
+package hlt2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Anytime random search for a better set of moves for one collision group,
+ * starting from the moves ORCA gave it. Each sample turns one ship's move into
+ * a random nearby legal move (MoveLattice.nearest around its planned angle),
+ * and keeps the change if the set scores lower. A set's score is how far each
+ * ship ends up from where its plan would take it (squared), plus a large cost
+ * for every collision in the coming turn and a small, fading cost for every
+ * collision between moving ships up to ROLLOUT_TURNS, when each ship of the
+ * group is played forward at its planned velocity and our other ships at
+ * their planned moves. Planets and ships that stay put only count in the
+ * coming turn; steering around them later is up to the navigation.
+ *
+ * A group with enemies in reach also fights each rollout out: CombatResolver
+ * plays ROLLOUT_TURNS of the fight from where the moves leave the group, our
+ * other ships where their plans leave them and the enemies where they are,
+ * and the score gains FIGHT_COST for each point of health we lose more than
+ * the enemy does. That term is capped well below a collision, so no sample
+ * trades a collision for a better fight.
+ *
+ * Turn-1 collisions use the same exact tests as OrcaSolver: planets and enemy
+ * or still ships are circles to stay out of, our ships outside the group move
+ * as planned.
+ *
+ * Neighbours are gathered from the map in the constructor, so run() reads
+ * nothing shared and searches of different groups can run on different
+ * threads. run() stops at a deadline or after a fixed number of samples per
+ * ship; getBest() can be called at any time, from any thread, and returns the
+ * best set found so far. Samples come from a generator seeded by the group, so
+ * a search that ends on its sample count always ends with the same moves.
+ */
+public class MoveSearch {
+
+	public static final int ROLLOUT_TURNS = 3;
+	public static final int SAMPLES_PER_SHIP = 200;
+
+	private static final double SHIP_RADIUS = Constants.SHIP_RADIUS;
+	private static final double FUDGE = Constants.FORECAST_FUDGE_FACTOR;
+	// anything further than this cannot be reached by the end of the rollout
+	private static final double REACH = 2 * ROLLOUT_TURNS * Constants.MAX_SPEED + 2 * SHIP_RADIUS + FUDGE;
+	private static final double EPS = 1e-9;
+	// nearest moves a ship may be turned into; beyond these the plan is lost anyway
+	private static final int CANDIDATES = 120;
+	private static final double COLLISION_COST = 1000;
+	// a collision on turn 2 of the rollout; halved for each turn after
+	private static final double ROLLOUT_COST = 8;
+	private static final int CLOCK_CHECK_INTERVAL = 32;
+	// health lost by us minus health lost by the enemy, per point; within +-MAX_FIGHT_COST
+	private static final double FIGHT_COST = 0.5;
+	private static final double MAX_FIGHT_COST = COLLISION_COST / 4;
+	// anyone further than this from a ship of the group cannot shoot it by the end of the rollout
+	private static final double FIGHT_REACH = CombatResolver.FIRING_RANGE + (ROLLOUT_TURNS + 1) * Constants.MAX_SPEED;
+	private static final int OWN_TEAM = 0, ENEMY_TEAM = 1;
+
+	private final int agents;
+	private final Ship[] ship;
+	private final List<ThrustMove> planned;
+	private final double[] x, y, prefX, prefY;
+	private final int[] plannedAngle, maxThrust;
+	private final int[] move; // current lattice move per agent
+	private final double[] own; // current cost of each agent without the pair terms
+	private final double[] pairSum; // the pair terms in each agent's cost
+	private final double[] pair; // agent i's pair term with agent j at pair[i * agents + j]
+	private final double[] candidatePair; // the same for a sampled move, against every other agent
+
+	// neighbours outside the group, agent i's from nStart[i] to nStart[i + 1]
+	private final int[] nStart;
+	private int neighbours = 0;
+	private int[] nId = new int[16]; // id of one of our ships with a planned move, or -1
+	private boolean[] nStatic = new boolean[16];
+	private double[] nX = new double[16], nY = new double[16], nVX = new double[16], nVY = new double[16];
+	private double[] nRadius = new double[16], nGap = new double[16];
+
+	// the other ships in the group's fight, as they will stand at the end of this turn
+	private final boolean fighting;
+	private int fighters = 0;
+	private int[] fTeam = new int[16], fHealth = new int[16], fCooldown = new int[16];
+	private boolean[] fUndocked = new boolean[16];
+	private double[] fX = new double[16], fY = new double[16];
+	private final CombatResolver combat = new CombatResolver();
+	private double fight; // the fight term of the current moves
+
+	private final SplittableRandom random;
+	private double score;
+	private int samples = 0;
+	private volatile int[] best;
+	private volatile double bestScore;
+
+	/**
+	 * @param moves the group's planned moves, parallel to ships
+	 * @param start the moves to start from (ORCA's), parallel to ships
+	 * @param plannedMoves thrust moves of our other ships by ship id; ships without one are treated as still
+	 */
+	public MoveSearch(final GameMap gameMap, final List<ThrustMove> moves, final List<Move> start,
+			final List<Ship> ships, final Map<Integer, ThrustMove> plannedMoves) {
+		agents = ships.size();
+		planned = moves;
+		ship = ships.toArray(new Ship[agents]);
+		x = new double[agents];
+		y = new double[agents];
+		prefX = new double[agents];
+		prefY = new double[agents];
+		plannedAngle = new int[agents];
+		maxThrust = new int[agents];
+		move = new int[agents];
+		own = new double[agents];
+		pairSum = new double[agents];
+		pair = new double[agents * agents];
+		candidatePair = new double[agents];
+		nStart = new int[agents + 1];
+		for (int i = 0; i < agents; i++) {
+			final ThrustMove m = moves.get(i);
+			x[i] = ship[i].getXPos();
+			y[i] = ship[i].getYPos();
+			prefX[i] = m.getdX();
+			prefY[i] = m.getdY();
+			plannedAngle[i] = m.getAngle();
+			maxThrust[i] = Math.min(m.getThrust(), Constants.MAX_SPEED);
+			final Move s = start.get(i);
+			move[i] = s instanceof ThrustMove ? toLattice((ThrustMove) s) : 0;
+		}
+		for (int i = 0; i < agents; i++) {
+			nStart[i] = neighbours;
+			gatherNeighbours(gameMap, i, plannedMoves);
+		}
+		nStart[agents] = neighbours;
+		fighting = gatherFighters(gameMap, plannedMoves);
+
+		random = new SplittableRandom(ship[0].getId() * 0x9E3779B97F4A7C15L + agents);
+		score = 0;
+		for (int i = 0; i < agents; i++) {
+			own[i] = ownCost(i, move[i]);
+			pairSum[i] = pairCosts(i, move[i], pair, i * agents);
+			score += own[i] + 0.5 * pairSum[i]; // each pair is in two agents' costs
+		}
+		fight = fighting ? fightCost(-1, 0) : 0;
+		score += fight;
+		best = move.clone();
+		bestScore = score;
+	}
+
+	private static int toLattice(final ThrustMove m) {
+		final int thrust = Math.min(m.getThrust(), Constants.MAX_SPEED);
+		return thrust == 0 ? 0 : MoveLattice.index((m.getAngle() % 360 + 360) % 360, thrust);
+	}
+
+	private void gatherNeighbours(final GameMap gameMap, final int i, final Map<Integer, ThrustMove> plannedMoves) {
+		for (final Planet p : gameMap.getAllPlanets().values()) {
+			if (Math.hypot(p.getXPos() - x[i], p.getYPos() - y[i]) - p.getRadius() < REACH) {
+				addNeighbour(i, -1, p.getXPos(), p.getYPos(), 0, 0, p.getRadius(), true);
+			}
+		}
+		for (final Ship other : gameMap.nearbyShipsWithinDistance(ship[i], REACH)) {
+			if (inGroup(other)) {
+				continue;
+			}
+			final ThrustMove m = other.getOwner() == gameMap.getMyPlayerId() ? plannedMoves.get(other.getId()) : null;
+			if (m != null && m.getThrust() > 0) {
+				addNeighbour(i, other.getId(), other.getXPos(), other.getYPos(), m.getdX(), m.getdY(), 0, false);
+			} else {
+				// a still ship of ours is still noted, in case another group's search moves it
+				addNeighbour(i, m != null ? other.getId() : -1, other.getXPos(), other.getYPos(), 0, 0, SHIP_RADIUS, true);
+			}
+		}
+	}
+
+	// every ship within FIGHT_REACH of the group's; returns whether any of them is an enemy
+	private boolean gatherFighters(final GameMap gameMap, final Map<Integer, ThrustMove> plannedMoves) {
+		final ArrayList<Ship> near = new ArrayList<>();
+		final HashSet<Ship> seen = new HashSet<>();
+		boolean enemies = false;
+		for (int i = 0; i < agents; i++) {
+			gameMap.shipsWithinDistance(ship[i], x[i], y[i], FIGHT_REACH, near);
+			for (final Ship other : near) {
+				if (inGroup(other) || !seen.add(other)) {
+					continue;
+				}
+				final boolean ours = other.getOwner() == gameMap.getMyPlayerId();
+				final ThrustMove m = ours ? plannedMoves.get(other.getId()) : null;
+				addFighter(ours ? OWN_TEAM : ENEMY_TEAM, other, m == null ? 0 : m.getdX(), m == null ? 0 : m.getdY());
+				enemies |= !ours;
+			}
+		}
+		return enemies;
+	}
+
+	private void addFighter(final int team, final Ship other, final double dx, final double dy) {
+		if (fighters == fX.length) {
+			final int n = fighters * 2;
+			fTeam = Arrays.copyOf(fTeam, n);
+			fHealth = Arrays.copyOf(fHealth, n);
+			fCooldown = Arrays.copyOf(fCooldown, n);
+			fUndocked = Arrays.copyOf(fUndocked, n);
+			fX = Arrays.copyOf(fX, n);
+			fY = Arrays.copyOf(fY, n);
+		}
+		fTeam[fighters] = team;
+		fHealth[fighters] = other.getHealth();
+		fCooldown[fighters] = other.getWeaponCooldown();
+		fUndocked[fighters] = other.getDockingStatus() == Ship.DockingStatus.Undocked;
+		fX[fighters] = other.getXPos() + dx;
+		fY[fighters] = other.getYPos() + dy;
+		fighters++;
+	}
+
+	private boolean inGroup(final Ship s) {
+		for (int j = 0; j < agents; j++) {
+			if (ship[j] == s || ship[j].getId() == s.getId() && ship[j].getOwner() == s.getOwner()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addNeighbour(final int i, final int id, final double px, final double py, final double vx, final double vy,
+			final double radius, final boolean isStatic) {
+		if (neighbours == nX.length) {
+			final int n = neighbours * 2;
+			nId = Arrays.copyOf(nId, n);
+			nStatic = Arrays.copyOf(nStatic, n);
+			nX = Arrays.copyOf(nX, n);
+			nY = Arrays.copyOf(nY, n);
+			nVX = Arrays.copyOf(nVX, n);
+			nVY = Arrays.copyOf(nVY, n);
+			nRadius = Arrays.copyOf(nRadius, n);
+			nGap = Arrays.copyOf(nGap, n);
+		}
+		nId[neighbours] = id;
+		nStatic[neighbours] = isStatic;
+		nX[neighbours] = px;
+		nY[neighbours] = py;
+		nVX[neighbours] = vx;
+		nVY[neighbours] = vy;
+		nRadius[neighbours] = radius;
+		// how far the agent can go before it could touch this one, per turn of the other's speed
+		nGap[neighbours] = Math.hypot(px - x[i], py - y[i])
+				- (isStatic ? radius + FUDGE : 2 * SHIP_RADIUS + SHIP_RADIUS / 1000.0);
+		neighbours++;
+	}
+
+	/**
+	 * Samples until the deadline (System.nanoTime()) or until every ship has
+	 * had SAMPLES_PER_SHIP tries. Call from one thread at a time.
+	 */
+	public void run(final long deadlineNanos) {
+		int movable = 0;
+		for (int i = 0; i < agents; i++) {
+			if (maxThrust[i] > 0) {
+				movable++;
+			}
+		}
+		final int limit = SAMPLES_PER_SHIP * movable;
+		// without a fight, a score of zero cannot be beaten
+		while (samples < limit && (fighting || score > 0)) {
+			if (samples % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadlineNanos) {
+				break;
+			}
+			samples++;
+			final int i = random.nextInt(agents);
+			if (maxThrust[i] == 0) {
+				continue;
+			}
+			// mostly small changes; squaring the draw favours the moves nearest the plan
+			final int count = Math.min(CANDIDATES, MoveLattice.nearestCount(maxThrust[i]));
+			final double u = random.nextDouble();
+			final int candidate = MoveLattice.rotate(MoveLattice.nearest(maxThrust[i], (int) (u * u * count)), plannedAngle[i]);
+			if (candidate == move[i]) {
+				continue;
+			}
+			final double newOwn = ownCost(i, candidate);
+			final double newPairSum = pairCosts(i, candidate, candidatePair, 0);
+			double delta = newOwn + newPairSum - (own[i] + pairSum[i]);
+			double newFight = fight;
+			if (fighting && delta < 2 * MAX_FIGHT_COST) {
+				newFight = fightCost(i, candidate);
+				delta += newFight - fight;
+			}
+			if (delta < -EPS) {
+				move[i] = candidate;
+				own[i] = newOwn;
+				pairSum[i] = newPairSum;
+				fight = newFight;
+				System.arraycopy(candidatePair, 0, pair, i * agents, agents);
+				// the pair terms in the other agents' costs changed with it
+				updatePartners(i);
+				score += delta; // every term that changed is in agent i's cost
+				best = move.clone();
+				bestScore = score;
+			}
+		}
+	}
+
+	// refreshes the other agents' pair terms with i; nothing else in their costs depends on i
+	private void updatePartners(final int i) {
+		for (int j = 0; j < agents; j++) {
+			if (j != i) {
+				final double term = pairCost(j, move[j], i);
+				pairSum[j] += term - pair[j * agents + i];
+				pair[j * agents + i] = term;
+			}
+		}
+	}
+
+	// distance from the plan and collisions with the neighbours outside the group
+	private double ownCost(final int i, final int m) {
+		final double dx = MoveLattice.dx(m) - prefX[i], dy = MoveLattice.dy(m) - prefY[i];
+		double c = dx * dx + dy * dy;
+		for (int k = nStart[i]; k < nStart[i + 1]; k++) {
+			for (int turn = 1; turn <= ROLLOUT_TURNS; turn++) {
+				if (hitsNeighbour(i, m, k, turn)) {
+					c += turnCost(turn);
+				}
+			}
+		}
+		return c;
+	}
+
+	// agent i's pair terms with move m into out from offset, one per agent; returns their sum
+	private double pairCosts(final int i, final int m, final double[] out, final int offset) {
+		double c = 0;
+		for (int j = 0; j < agents; j++) {
+			out[offset + j] = j == i ? 0 : pairCost(i, m, j);
+			c += out[offset + j];
+		}
+		return c;
+	}
+
+	// collisions of agent i, making move m, with agent j as it moves now
+	private double pairCost(final int i, final int m, final int j) {
+		double c = 0;
+		for (int turn = 1; turn <= ROLLOUT_TURNS; turn++) {
+			if (hitsAgent(i, m, j, turn)) {
+				c += turnCost(turn);
+			}
+		}
+		return c;
+	}
+
+	// the fight played out with agent changed making move m and the others their current moves
+	private double fightCost(final int changed, final int m) {
+		combat.clear();
+		for (int i = 0; i < agents; i++) {
+			final int mi = i == changed ? m : move[i];
+			combat.add(OWN_TEAM, ship[i], x[i] + MoveLattice.dx(mi), y[i] + MoveLattice.dy(mi));
+		}
+		for (int f = 0; f < fighters; f++) {
+			combat.add(fTeam[f], fX[f], fY[f], fHealth[f], fUndocked[f], fCooldown[f]);
+		}
+		combat.resolve(ROLLOUT_TURNS, Constants.MAX_SPEED);
+		final double c = FIGHT_COST * (combat.getHealthLost(OWN_TEAM) - combat.getHealthLost(ENEMY_TEAM));
+		return Math.max(-MAX_FIGHT_COST, Math.min(MAX_FIGHT_COST, c));
+	}
+
+	private static double turnCost(final int turn) {
+		return turn == 1 ? COLLISION_COST : ROLLOUT_COST / (1 << (turn - 2));
+	}
+
+	// where agent i is at the start of a turn (1-based), having made move m and then gone on as planned
+	private double startX(final int i, final int m, final int turn) {
+		return turn == 1 ? x[i] : x[i] + MoveLattice.dx(m) + (turn - 2) * prefX[i];
+	}
+
+	private double startY(final int i, final int m, final int turn) {
+		return turn == 1 ? y[i] : y[i] + MoveLattice.dy(m) + (turn - 2) * prefY[i];
+	}
+
+	private double stepX(final int i, final int m, final int turn) {
+		return turn == 1 ? MoveLattice.dx(m) : prefX[i];
+	}
+
+	private double stepY(final int i, final int m, final int turn) {
+		return turn == 1 ? MoveLattice.dy(m) : prefY[i];
+	}
+
+	private boolean hitsNeighbour(final int i, final int m, final int k, final int turn) {
+		final double otherSpeed = Math.abs(nVX[k]) + Math.abs(nVY[k]);
+		if (nGap[k] > turn * (Constants.MAX_SPEED + otherSpeed) + EPS) {
+			return false;
+		}
+		final double ax = startX(i, m, turn), ay = startY(i, m, turn);
+		final double vx = stepX(i, m, turn), vy = stepY(i, m, turn);
+		if (nStatic[k]) {
+			// whatever stays put is the navigation's business after this turn
+			return turn == 1 && Collision.segmentCircleIntersect(ax, ay, ax + vx, ay + vy, nX[k], nY[k], nRadius[k], FUDGE);
+		}
+		final double ox = nX[k] + (turn - 1) * nVX[k], oy = nY[k] + (turn - 1) * nVY[k];
+		return pairHits(ox - ax, oy - ay, nVX[k] - vx, nVY[k] - vy);
+	}
+
+	private boolean hitsAgent(final int i, final int m, final int j, final int turn) {
+		final double ax = startX(i, m, turn), ay = startY(i, m, turn);
+		final double ox = startX(j, move[j], turn), oy = startY(j, move[j], turn);
+		final double dix = ox - ax, diy = oy - ay;
+		// neither can close more than two full thrusts in a turn
+		if (dix * dix + diy * diy > (2 * SHIP_RADIUS + 2 * Constants.MAX_SPEED + 1) * (2 * SHIP_RADIUS + 2 * Constants.MAX_SPEED + 1)) {
+			return false;
+		}
+		return pairHits(dix, diy, stepX(j, move[j], turn) - stepX(i, m, turn), stepY(j, move[j], turn) - stepY(i, m, turn));
+	}
+
+	// the exact test: the other ship's offset over the turn against a circle around the origin
+	private static boolean pairHits(final double dix, final double diy, final double rvx, final double rvy) {
+		return Collision.segmentCircleIntersect(dix, diy, dix + rvx, diy + rvy, 0, 0, 2 * SHIP_RADIUS, SHIP_RADIUS / 1000.0);
+	}
+
+	/** @return the best moves found so far, parallel to the ships; the planned move object where unchanged */
+	public ArrayList<Move> getBest() {
+		final int[] b = best;
+		final ArrayList<Move> moves = new ArrayList<>(agents);
+		for (int i = 0; i < agents; i++) {
+			moves.add(toMove(i, b[i]));
+		}
+		return moves;
+	}
+
+	private Move toMove(final int i, final int m) {
+		final ThrustMove p = planned.get(i);
+		final int angle = MoveLattice.thrust(m) == 0 ? plannedAngle[i] : MoveLattice.angle(m);
+		if (p.getThrust() == MoveLattice.thrust(m) && (MoveLattice.thrust(m) == 0 || p.getAngle() == angle)) {
+			return p;
+		}
+		return new ThrustMove(ship[i], angle, MoveLattice.thrust(m));
+	}
+
+	public double getBestScore() {
+		return bestScore;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Whether the best moves are still clear of our ships outside the group
+	 * whose moves have changed since the search was set up (by the search of
+	 * another group).
+	 */
+	public boolean isClearOf(final Map<Integer, ThrustMove> currentMoves) {
+		final int[] b = best;
+		for (int i = 0; i < agents; i++) {
+			final double vx = MoveLattice.dx(b[i]), vy = MoveLattice.dy(b[i]);
+			for (int k = nStart[i]; k < nStart[i + 1]; k++) {
+				if (nId[k] < 0) {
+					continue;
+				}
+				final ThrustMove now = currentMoves.get(nId[k]);
+				final double ovx = now == null ? 0 : now.getdX(), ovy = now == null ? 0 : now.getdY();
+				if (ovx == nVX[k] && ovy == nVY[k]) {
+					continue;
+				}
+				if (pairHits(nX[k] - x[i], nY[k] - y[i], ovx - vx, ovy - vy)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
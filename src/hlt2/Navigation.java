@@ -3,13 +3,17 @@ package hlt2;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 
 import hlt2.Ship.DockingStatus;
 
 public class Navigation {
 	
+	private static final ThreadLocal<OrcaSolver> orcaSolvers = ThreadLocal.withInitial(OrcaSolver::new);
+	private static final ThreadLocal<HeadingSolver> headingSolvers = ThreadLocal.withInitial(HeadingSolver::new);
+	
 	static class IndexSort implements Comparable<IndexSort>{
 		double d;
 		int idx;
@@ -25,6 +29,19 @@ public class Navigation {
 		}
 	}
 	
+	/**
+	 * Collision-free moves for the whole group in one go (see OrcaSolver), as
+	 * close to the planned ones as it allows. plannedMoves holds the thrust moves
+	 * of our ships outside the group, by ship id, which are kept as they are.
+	 */
+	public static ArrayList<Move> reviseMovesOrca(
+			final GameMap gameMap,
+			final ArrayList<ThrustMove> moveList,
+			final ArrayList<Ship> shipList,
+			final Map<Integer, ThrustMove> plannedMoves) {
+		return orcaSolvers.get().solve(gameMap, moveList, shipList, plannedMoves);
+	}
+	
 	public static ArrayList<Move> reviseMovesCollision_v2(
 			final GameMap gameMap,
 			final ArrayList<ThrustMove> moveList,
@@ -78,7 +95,7 @@ public class Navigation {
 			revisedMoves.set(precedence[i], navShipAsRevision(es, currShip, new Position(xfinal, yfinal),
 					badMove.getThrust(), Constants.MAX_NAVIGATION_CORRECTIONS, Math.PI/180.0));
 			
-			Log.log("revised move of ship " + currShip.getId());
+			Log.debug("revised move of ship %d", currShip.getId());
 		}
 		
 		// double-check for collisions
@@ -121,7 +138,7 @@ public class Navigation {
 				revisedMoves.set(precedence[i], navShipAsRevision(es, currShip, new Position(xfinal, yfinal),
 						Constants.MAX_SPEED, Constants.MAX_NAVIGATION_CORRECTIONS, Math.PI/180.0));
 				
-				Log.log("revised move of ship " + currShip.getId());
+				Log.debug("revised move of ship %d", currShip.getId());
 			}
 		}
 		
@@ -181,7 +198,7 @@ public class Navigation {
 			revisedMoves.set(precedence[i], navShipAsRevision(es, currShip, new Position(xfinal, yfinal),
 					Constants.MAX_SPEED, Constants.MAX_NAVIGATION_CORRECTIONS, Math.PI/180.0));
 			
-			Log.log("revised move of ship " + currShip.getId());
+			Log.debug("revised move of ship %d", currShip.getId());
 		}
 		
 		// double-check for collisions
@@ -224,7 +241,7 @@ public class Navigation {
 				revisedMoves.set(precedence[i], navShipAsRevision(es, currShip, new Position(xfinal, yfinal),
 						Constants.MAX_SPEED, Constants.MAX_NAVIGATION_CORRECTIONS, Math.PI/180.0));
 				
-				Log.log("revised move of ship " + currShip.getId());
+				Log.debug("revised move of ship %d", currShip.getId());
 			}
 		}
 		
@@ -243,46 +260,19 @@ public class Navigation {
         if (maxCorrections <= 0) {
             return null;
         }
+        final long navStart = System.nanoTime();
+        final long segmentTestsAtStart = Metrics.segmentTests();
         
-        Position targetPos1 = new Position(targetPos.getXPos(), targetPos.getYPos());
-        Position targetPos2 = new Position(targetPos.getXPos(), targetPos.getYPos());
-
-        double distance1 = ship.getDistanceTo(targetPos);
-        double angleRad1 = ship.orientTowardsInRad(targetPos);
-        double distance2 = ship.getDistanceTo(targetPos);
-        double angleRad2 = ship.orientTowardsInRad(targetPos);
+        final HeadingSolver solver = headingSolvers.get();
+        solver.begin(ship, targetPos);
+        
+        // no clear heading leaves a zero thrust move
         double distance = 0;
         double angleRad = 0;
-        
-    	int i=0;
-        for (; i < maxCorrections; i++) {
-            if (GameMap.objectsBetween(ship, targetPos1, nearbyEntities).isEmpty()) {
-            	distance = distance1;
-            	angleRad = angleRad1;
-            	break;
-            } else if (GameMap.objectsBetween(ship, targetPos2, nearbyEntities).isEmpty()) {
-            	distance = distance2;
-            	angleRad = angleRad2;
-            	break;
-            } else {
-                final double newTargetDx1 = Math.cos(angleRad1 + angularStepRad) * distance1;
-                final double newTargetDy1 = Math.sin(angleRad1 + angularStepRad) * distance1;
-                final Position newTarget1 = new Position(ship.getXPos() + newTargetDx1, ship.getYPos() + newTargetDy1);
-                targetPos1 = newTarget1;
-                distance1 = ship.getDistanceTo(targetPos1);
-                angleRad1 = ship.orientTowardsInRad(targetPos1);
-                
-                final double newTargetDx2 = Math.cos(angleRad2 - angularStepRad) * distance2;
-                final double newTargetDy2 = Math.sin(angleRad2 - angularStepRad) * distance2;
-                final Position newTarget2 = new Position(ship.getXPos() + newTargetDx2, ship.getYPos() + newTargetDy2);
-                targetPos2 = newTarget2;
-                distance2 = ship.getDistanceTo(targetPos2);
-                angleRad2 = ship.orientTowardsInRad(targetPos2);
-            }
-	        if (i >= maxCorrections) {
-	        	Log.log("couldn't find good revision; sending zero thrust move");
-	        	return new ThrustMove(ship, 0, 0);
-	        }
+        if (solver.solve(maxCorrections, angularStepRad, (start, target, endX, endY) ->
+        		GameMap.entityBlocking(start, target, endX, endY, nearbyEntities)) != HeadingSolver.NOT_FOUND) {
+        	distance = solver.getDistance();
+        	angleRad = solver.getAngle();
         }
 
         final int thrust;
@@ -296,6 +286,7 @@ public class Navigation {
 
         final int angleDeg = Util.angleRadToDegClipped(angleRad);
 
+        Metrics.recordNavigation(navStart, segmentTestsAtStart);
         return new ThrustMove(ship, angleDeg, thrust);
     }
 	
@@ -305,7 +296,16 @@ public class Navigation {
             final Entity dockTarget,
             final int maxThrust)
     {
-        final int maxCorrections = Constants.MAX_NAVIGATION_CORRECTIONS;
+    	return navShipToDock_v2(gameMap, ship, dockTarget, maxThrust, Constants.MAX_NAVIGATION_CORRECTIONS);
+    }
+    
+    public static ThrustMove navShipToDock_v2(
+            final GameMap gameMap,
+            final Ship ship,
+            final Entity dockTarget,
+            final int maxThrust,
+            final int maxCorrections)
+    {
         final boolean avoidObstacles = true;
         final double angularStepRad = Math.PI/180.0;
         final Position targetPos = ship.getClosestPoint(dockTarget);
@@ -313,6 +313,32 @@ public class Navigation {
         return navShipTowardsTarget_v2(gameMap, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
     }
     
+    // as navShipToDock_v2, but when planets are in the way it heads for the furthest point of the way
+    // around them that the ship can see; the heading search in navShipTowardsTarget_v2 then only
+    // steers around what the planet graph leaves out, such as ships
+    public static ThrustMove navShipToDock_v3(
+            final GameMap gameMap,
+            final PlanetGraph planetGraph,
+            final Ship ship,
+            final Planet dockTarget,
+            final int maxThrust,
+            final int maxCorrections)
+    {
+        final double angularStepRad = Math.PI/180.0;
+        final Position targetPos = ship.getClosestPoint(dockTarget);
+        Position aimPos = planetGraph.waypoint(ship, dockTarget, targetPos);
+        if (aimPos != targetPos) {
+            final double distance = ship.getDistanceTo(aimPos);
+            if (distance < maxThrust) {
+                // a waypoint is only a corner to go past, not somewhere to stop
+                final double angleRad = ship.orientTowardsInRad(aimPos);
+                aimPos = new Position(ship.getXPos() + maxThrust * Math.cos(angleRad),
+                		ship.getYPos() + maxThrust * Math.sin(angleRad));
+            }
+        }
+
+        return navShipTowardsTarget_v2(gameMap, ship, aimPos, maxThrust, true, maxCorrections, angularStepRad);
+    }
     public static ThrustMove navShipToHostileShip_v2(
             final GameMap gameMap,
             final Ship ship,
@@ -333,7 +359,16 @@ public class Navigation {
             final Ship hostileShip,
             final int maxThrust)
     {
-        final int maxCorrections = Constants.MAX_NAVIGATION_CORRECTIONS;
+    	return navShipToHostileShip_v3(gameMap, ship, hostileShip, maxThrust, Constants.MAX_NAVIGATION_CORRECTIONS);
+    }
+    
+    public static ThrustMove navShipToHostileShip_v3(
+            final GameMap gameMap,
+            final Ship ship,
+            final Ship hostileShip,
+            final int maxThrust,
+            final int maxCorrections)
+    {
         final boolean avoidObstacles = true;
         final double angularStepRad = Math.PI/180.0;
         // 6 - 0.5 - 0.5 = 5
@@ -454,8 +489,16 @@ public class Navigation {
             final int maxCorrections,
             final double angularStepRad)
     {
-    	return navShipTowardsTarget(gameMap, ship, targetPos, maxThrust, 
-    			maxCorrections, angularStepRad, gameMap::stationaryObjectsBetween2);
+        if (maxCorrections <= 0) {
+            return null;
+        }
+        final long navStart = System.nanoTime();
+        final long segmentTestsAtStart = Metrics.segmentTests();
+        
+        final HeadingSolver solver = headingSolvers.get();
+        solver.begin(ship, targetPos);
+        return thrustAlongClearHeading(solver, gameMap::stationaryObjectBlocking2, ship, maxThrust,
+        		maxCorrections, angularStepRad, navStart, segmentTestsAtStart);
     }
     
     public static ThrustMove navShipTowardsTarget(
@@ -471,6 +514,8 @@ public class Navigation {
     			avoidObstacles, maxCorrections, angularStepRad, false);
     }
     
+    // turns the target one step at a time, both ways, until pathClear (e.g. gameMap::isPathClear) accepts it;
+    // works with any test, but costs up to 2*maxCorrections of them
     public static ThrustMove navShipTowardsTarget(
             final GameMap gameMap,
             final Ship ship,
@@ -478,11 +523,13 @@ public class Navigation {
             final int maxThrust,
             final int maxCorrections,
             final double angularStepRad,
-            BiFunction<Position, Position, ArrayList<Entity>> obstacleLister)
+            BiPredicate<Position, Position> pathClear)
     {
         if (maxCorrections <= 0) {
             return null;
         }
+        final long navStart = System.nanoTime();
+        final long segmentTestsAtStart = Metrics.segmentTests();
         
         Position targetPos1 = new Position(targetPos.getXPos(), targetPos.getYPos());
         Position targetPos2 = new Position(targetPos.getXPos(), targetPos.getYPos());
@@ -498,8 +545,8 @@ public class Navigation {
         boolean path1clear = false;
         boolean path2clear = false;
         for (; i < maxCorrections; i++) {
-        	path1clear = obstacleLister.apply(ship, targetPos1).isEmpty();
-        	path2clear = obstacleLister.apply(ship, targetPos2).isEmpty();
+        	path1clear = pathClear.test(ship, targetPos1);
+        	path2clear = pathClear.test(ship, targetPos2);
         	if (path1clear) {
         		distance = distance1;
         		angleRad = angleRad1;
@@ -538,6 +585,7 @@ public class Navigation {
 
         final int angleDeg = Util.angleRadToDegClipped(angleRad);
 
+        Metrics.recordNavigation(navStart, segmentTestsAtStart);
         return new ThrustMove(ship, angleDeg, thrust);
     }
 	
@@ -556,55 +604,48 @@ public class Navigation {
             return null;
         }
         
-        Position targetPos1 = new Position(targetPos.getXPos(), targetPos.getYPos());
-        Position targetPos2 = new Position(targetPos.getXPos(), targetPos.getYPos());
+        final long navStart = System.nanoTime();
+        final long segmentTestsAtStart = Metrics.segmentTests();
+        
+        if (avoidObstacles) {
+        	final HeadingSolver solver = headingSolvers.get();
+        	solver.begin(ship, targetPos);
+        	return thrustAlongClearHeading(solver,
+        			stationaryObstacles ? gameMap::stationaryObjectBlocking : gameMap::objectBlocking,
+        			ship, maxThrust, maxCorrections, angularStepRad, navStart, segmentTestsAtStart);
+        }
 
-        double distance1 = ship.getDistanceTo(targetPos);
-        double angleRad1 = ship.orientTowardsInRad(targetPos);
-        double distance2 = ship.getDistanceTo(targetPos);
-        double angleRad2 = ship.orientTowardsInRad(targetPos);
+        // without obstacle avoidance there is no heading to take
+        Metrics.recordNavigation(navStart, segmentTestsAtStart);
+        return new ThrustMove(ship, 0, 0);
+    }
+    
+    /*
+     * The clear heading closest to the solver's target, as a thrust move. Like the
+     * stepwise search, a heading more than 2/3 of the way round is taken at half
+     * thrust, and when there is none the ship moves at a quarter thrust along 0.
+     */
+    private static ThrustMove thrustAlongClearHeading(
+            final HeadingSolver solver,
+            final HeadingSolver.Obstacles obstacles,
+            final Ship ship,
+            final int maxThrust,
+            final int maxCorrections,
+            final double angularStepRad,
+            final long navStart,
+            final long segmentTestsAtStart)
+    {
+        int i = solver.solve(maxCorrections, angularStepRad, obstacles);
         double distance = 0;
         double angleRad = 0;
-        
-        if (avoidObstacles) {
-        	int i=0;
-        	boolean path1clear = false;
-        	boolean path2clear = false;
-	        for (; i < maxCorrections; i++) {
-	        	if (stationaryObstacles) {
-	        		path1clear = gameMap.stationaryObjectsBetween(ship, targetPos1).isEmpty();
-	        		path2clear = gameMap.stationaryObjectsBetween(ship, targetPos2).isEmpty();
-	        	} else {
-	        		path1clear = gameMap.objectsBetween(ship, targetPos1).isEmpty();
-	        		path2clear = gameMap.objectsBetween(ship, targetPos2).isEmpty();
-	        	}
-	            if (path1clear) {
-	            	distance = distance1;
-	            	angleRad = angleRad1;
-	            	break;
-	            } else if (path2clear) {
-	            	distance = distance2;
-	            	angleRad = angleRad2;
-	            	break;
-	            } else {
-	                final double newTargetDx1 = Math.cos(angleRad1 + angularStepRad) * distance1;
-	                final double newTargetDy1 = Math.sin(angleRad1 + angularStepRad) * distance1;
-	                final Position newTarget1 = new Position(ship.getXPos() + newTargetDx1, ship.getYPos() + newTargetDy1);
-	                targetPos1 = newTarget1;
-	                distance1 = ship.getDistanceTo(targetPos1);
-	                angleRad1 = ship.orientTowardsInRad(targetPos1);
-	                
-	                final double newTargetDx2 = Math.cos(angleRad2 - angularStepRad) * distance2;
-	                final double newTargetDy2 = Math.sin(angleRad2 - angularStepRad) * distance2;
-	                final Position newTarget2 = new Position(ship.getXPos() + newTargetDx2, ship.getYPos() + newTargetDy2);
-	                targetPos2 = newTarget2;
-	                distance2 = ship.getDistanceTo(targetPos2);
-	                angleRad2 = ship.orientTowardsInRad(targetPos2);
-	            }
-	        }
-	        if (i >= maxCorrections * 2 / 3) distance = Math.max(1, maxThrust/2);
-	        if (i >= maxCorrections) distance /= 2;
+        if (i == HeadingSolver.NOT_FOUND) {
+        	i = maxCorrections;
+        } else {
+        	distance = solver.getDistance();
+        	angleRad = solver.getAngle();
         }
+        if (i >= maxCorrections * 2 / 3) distance = Math.max(1, maxThrust/2);
+        if (i >= maxCorrections) distance /= 2;
 
         final int thrust;
         if (distance < maxThrust) {
@@ -617,6 +658,7 @@ public class Navigation {
 
         final int angleDeg = Util.angleRadToDegClipped(angleRad);
 
+        Metrics.recordNavigation(navStart, segmentTestsAtStart);
         return new ThrustMove(ship, angleDeg, thrust);
     }
     
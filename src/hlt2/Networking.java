@@ -8,11 +8,48 @@ public class Networking {
     private static final char UNDOCK_KEY = 'u';
     private static final char DOCK_KEY = 'd';
     private static final char THRUST_KEY = 't';
+    private static final long END_OF_TURN_LOG_FLUSH_MILLIS = 20;
 
+    private static final StdioEngineIO STDIO = new StdioEngineIO();
+
+    // -Dhlt.record=true writes <id>_<bot>.replay next to the log (see RecordingEngineIO)
+    private static final boolean RECORD_REPLAY = Boolean.getBoolean("hlt.record");
+
+    private EngineIO io;
+    private final boolean createLogFiles;
     private String botName;
     private int turn = 0;
+    private final TurnClock turnClock = new TurnClock();
+
+    // one reused line buffer; each frame is fully parsed before the next is read
+    private final Metadata lineMetadata = new Metadata();
+
+    public Networking() {
+        this(STDIO, true);
+    }
 
+    /**
+     * @param createLogFiles whether initialize() opens this bot's log and metrics
+     * files; bots sharing one JVM should leave them off, since both are global
+     */
+    public Networking(final EngineIO io, final boolean createLogFiles) {
+        this.io = io;
+        this.createLogFiles = createLogFiles;
+    }
+
+    // for bots that still send moves statically; always goes to stdout
     public static void sendMoves(final Iterable<Move> moves) {
+        STDIO.writeMoves(moves);
+        // moves are out; give the log writer a bounded chance to catch up before the next frame
+        Log.flush(END_OF_TURN_LOG_FLUSH_MILLIS);
+    }
+
+    public void submitMoves(final Iterable<Move> moves) {
+        io.writeMoves(moves);
+        Log.flush(END_OF_TURN_LOG_FLUSH_MILLIS);
+    }
+
+    public static String formatMoves(final Iterable<Move> moves) {
         final StringBuilder moveString = new StringBuilder();
 
         for (final Move move : moves) {
@@ -45,49 +82,34 @@ public class Networking {
                     break;
             }
         }
-        System.out.println(moveString);
-    }
-
-    private static String readLine() {
-        try {
-            StringBuilder builder = new StringBuilder();
-            int buffer;
-
-            for (; (buffer = System.in.read()) >= 0;) {
-                if (buffer == '\n') {
-                    break;
-                }
-                if (buffer == '\r') {
-                    // Ignore carriage return if on windows for manual testing.
-                    continue;
-                }
-                builder = builder.append((char)buffer);
-            }
-            return builder.toString();
-        } catch(final Exception e) {
-            System.exit(1);
-            throw new RuntimeException(e);
-        }
+        return moveString.toString();
     }
 
-    private static Metadata readLineIntoMetadata() {
-        return new Metadata(readLine().trim().split(" "));
+    private Metadata readLineIntoMetadata() {
+        io.readLine(lineMetadata);
+        return lineMetadata;
     }
 
     public GameMap initialize(final String botName) {
         this.botName = botName;
 
-        final int myId = Integer.parseInt(readLine());
-        try {
-            Log.initialize(new FileWriter(String.format("%d_%s.log", myId, botName)));
-        }
-        catch (IOException e) {
-            e.printStackTrace();
+        final int myId = readLineIntoMetadata().popInt();
+        if (createLogFiles) {
+            try {
+                Log.initialize(new FileWriter(String.format("%d_%s.log", myId, botName)));
+                Metrics.initialize(new FileWriter(String.format("%d_%s_metrics.jsonl", myId, botName)));
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (RECORD_REPLAY) {
+                startRecording(String.format("%d_%s.replay", myId, botName));
+            }
         }
 
         final Metadata inputStringMapSize = readLineIntoMetadata();
-        final int width = Integer.parseInt(inputStringMapSize.pop());
-        final int height = Integer.parseInt(inputStringMapSize.pop());
+        final int width = inputStringMapSize.popInt();
+        final int height = inputStringMapSize.popInt();
 
         final GameMap gameMap = new GameMap(width, height, myId);
         updateMap(gameMap);
@@ -95,12 +117,35 @@ public class Networking {
         return gameMap;
     }
 
+    private void startRecording(final String path) {
+        try {
+            final RecordingEngineIO recorder = new RecordingEngineIO(io, path, botName);
+            recorder.recordInput(lineMetadata); // the id line has already been read
+            io = recorder;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // number of the turn whose frame was read last (0 is the pre-game frame)
+    public int getTurn() {
+        return turn - 1;
+    }
+
+    public TurnClock getTurnClock() {
+        return turnClock;
+    }
+
     public void updateMap(final GameMap map) {
         if (turn == 1) {
-            System.out.println(botName);
+            io.writeLine(botName);
         }
 
         final Metadata inputStringMetadata = readLineIntoMetadata();
+        // the engine's clock is running from the moment the frame arrives
+        turnClock.start();
+        Metrics.beginTurn();
 
         if (turn == 0) {
             Log.log("--- PRE-GAME ---");
@@ -0,0 +1,591 @@
+package hlt2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collision-free thrust moves for a group of our own ships, all solved at once
+ * with optimal reciprocal collision avoidance (ORCA, van den Berg et al.).
+ *
+ * Every ship that plans to move is an agent. For each neighbour, the agent gets
+ * a half plane of velocities that keeps the pair apart for one turn. Between
+ * two agents each takes half of the needed change. Against anything that won't
+ * adapt (planets, enemy ships, our other ships with their moves as planned) the
+ * agent takes all of it. The velocity closest to the planned one inside all of
+ * its half planes comes from a 2-d linear program, capped at the planned
+ * thrust. If the half planes leave no room, the least-violating velocity is
+ * used instead. Any velocities that satisfy the half planes keep every pair
+ * apart, so the agents need no ordering between them.
+ *
+ * The result is then snapped to a legal move that still satisfies the half
+ * planes. Last, every move is checked with the exact collision tests. A ship
+ * that still collides (when the program had no room, or no legal move fit it)
+ * gets the move closest to its plan that is clear against everyone's moves.
+ * Ships are never sped up past their planned thrust.
+ *
+ * Neighbours (group members, planets and other ships within one turn's
+ * reach) come from the map's grids and are gathered once per solve, so the
+ * cost is linear in the number of neighbours of each ship. Not thread safe;
+ * use one per thread.
+ */
+public class OrcaSolver {
+
+	private static final double SHIP_RADIUS = Constants.SHIP_RADIUS;
+	// agents and moving ships are kept this far apart, the exact test only needs 2 * SHIP_RADIUS
+	private static final double SHIP_MARGIN = 0.1;
+	// anything within this of a ship can be reached in one turn
+	private static final double REACH = 2 * Constants.MAX_SPEED + 2 * SHIP_RADIUS + 0.01;
+	private static final double EPS = 1e-9;
+	// angles around the continuous solution tried before scanning every legal move
+	private static final int ANGLE_WINDOW = 3;
+	private static final int REPAIR_PASSES = 4;
+	// the exact test's circle around another ship
+	private static final double PAIR_RADIUS = 2 * SHIP_RADIUS + SHIP_RADIUS / 1000.0;
+
+	// the group
+	private int agents;
+	private Ship[] ship = new Ship[0];
+	private double[] x = new double[0], y = new double[0];
+	private double[] prefX = new double[0], prefY = new double[0];
+	private int[] plannedAngle = new int[0], maxThrust = new int[0];
+	private int[] resultAngle = new int[0], resultThrust = new int[0];
+
+	// group members by ship id
+	private final HashMap<Integer, Integer> agentIndex = new HashMap<>();
+	private int[] nearbyAgents = new int[0];
+
+	// neighbours of every agent, agent i's from nStart[i] to nStart[i + 1]:
+	// other agents (index >= 0) or fixed circles (-1)
+	private int neighbours;
+	private int[] nStart = new int[0];
+	private int[] nAgent = new int[0];
+	private double[] nX = new double[0], nY = new double[0], nVX = new double[0], nVY = new double[0];
+	private double[] nRadius = new double[0];
+	private double[] nGap = new double[0]; // how far the agent can move before it could touch this one
+	private boolean[] nStatic = new boolean[0];
+	private int blocker; // neighbour that failed the last exact test of the current agent
+
+	// half planes: points left of (dirX, dirY) through (pointX, pointY) are allowed; fixed ones come first
+	private int lines, fixedLines;
+	private double[] pointX = new double[0], pointY = new double[0], dirX = new double[0], dirY = new double[0];
+	private double[] projPointX = new double[0], projPointY = new double[0], projDirX = new double[0], projDirY = new double[0];
+	private double resultX, resultY;
+	private boolean feasible;
+
+	/**
+	 * @param moves planned moves of the group, parallel to ships
+	 * @param plannedMoves thrust moves of our other ships by ship id; ships without one are treated as still
+	 * @return a move for each ship of the group
+	 */
+	public ArrayList<Move> solve(final GameMap gameMap, final List<ThrustMove> moves, final List<Ship> ships,
+			final Map<Integer, ThrustMove> plannedMoves) {
+		load(moves, ships);
+
+		// each agent's half planes only depend on the others' planned velocities, so order doesn't matter
+		neighbours = 0;
+		for (int i = 0; i < agents; i++) {
+			nStart[i] = neighbours;
+			if (maxThrust[i] > 0) {
+				gatherNeighbours(gameMap, i, plannedMoves);
+			}
+		}
+		nStart[agents] = neighbours;
+
+		for (int i = 0; i < agents; i++) {
+			if (maxThrust[i] == 0) {
+				resultAngle[i] = plannedAngle[i];
+				resultThrust[i] = 0;
+				continue;
+			}
+			buildHalfPlanes(i);
+			solveVelocity(i);
+			snapToLegalMove(i);
+		}
+
+		repair();
+
+		final ArrayList<Move> revised = new ArrayList<>(agents);
+		for (int i = 0; i < agents; i++) {
+			final ThrustMove planned = moves.get(i);
+			if (planned.getAngle() == resultAngle[i] && planned.getThrust() == resultThrust[i]) {
+				revised.add(planned);
+			} else {
+				revised.add(new ThrustMove(ship[i], resultAngle[i], resultThrust[i]));
+			}
+		}
+		return revised;
+	}
+
+	private void load(final List<ThrustMove> moves, final List<Ship> ships) {
+		agents = ships.size();
+		if (ship.length < agents) {
+			final int n = agents * 2;
+			ship = new Ship[n];
+			x = new double[n];
+			y = new double[n];
+			prefX = new double[n];
+			prefY = new double[n];
+			plannedAngle = new int[n];
+			maxThrust = new int[n];
+			resultAngle = new int[n];
+			resultThrust = new int[n];
+			nStart = new int[n + 1];
+			nearbyAgents = new int[n];
+		}
+		agentIndex.clear();
+		for (int i = 0; i < agents; i++) {
+			final ThrustMove m = moves.get(i);
+			ship[i] = ships.get(i);
+			x[i] = ship[i].getXPos();
+			y[i] = ship[i].getYPos();
+			prefX[i] = m.getdX();
+			prefY[i] = m.getdY();
+			plannedAngle[i] = m.getAngle();
+			maxThrust[i] = Math.min(m.getThrust(), Constants.MAX_SPEED);
+			agentIndex.put(ship[i].getId(), i);
+		}
+	}
+
+	/*
+	 * Other agents, planets and ships in reach that are not in the group, in
+	 * that order. Our own ships outside the group move as planned; the rest
+	 * stay put.
+	 */
+	private void gatherNeighbours(final GameMap gameMap, final int i, final Map<Integer, ThrustMove> plannedMoves) {
+		final ArrayList<Ship> nearby = gameMap.nearbyShipsWithinDistance(ship[i], REACH);
+		int found = 0;
+		for (final Ship other : nearby) {
+			final int j = agentOf(other);
+			if (j >= 0) {
+				nearbyAgents[found++] = j;
+			}
+		}
+		// by index, as a scan over the group would find them
+		Arrays.sort(nearbyAgents, 0, found);
+		for (int f = 0; f < found; f++) {
+			final int j = nearbyAgents[f];
+			final double d = Math.hypot(x[j] - x[i], y[j] - y[i]);
+			// a group ship that won't move is just a circle to stay clear of
+			addNeighbour(i, maxThrust[j] > 0 ? j : -1, x[j], y[j], prefX[j], prefY[j], shipClearance(d), false);
+		}
+		for (final Planet p : gameMap.nearbyPlanetsWithinDistance(ship[i], REACH)) {
+			addNeighbour(i, -1, p.getXPos(), p.getYPos(), 0, 0, p.getRadius() + Constants.FORECAST_FUDGE_FACTOR, true);
+		}
+		for (final Ship other : nearby) {
+			if (agentOf(other) >= 0) {
+				continue;
+			}
+			final ThrustMove m = other.getOwner() == gameMap.getMyPlayerId() ? plannedMoves.get(other.getId()) : null;
+			if (m != null && m.getThrust() > 0) {
+				addNeighbour(i, -1, other.getXPos(), other.getYPos(), m.getdX(), m.getdY(),
+						shipClearance(ship[i].getDistanceTo(other)), false);
+			} else {
+				addNeighbour(i, -1, other.getXPos(), other.getYPos(), 0, 0, SHIP_RADIUS + Constants.FORECAST_FUDGE_FACTOR, true);
+			}
+		}
+	}
+
+	// index of the group member that is this ship, or -1
+	private int agentOf(final Ship s) {
+		final Integer j = agentIndex.get(s.getId());
+		return j != null && ship[j].getOwner() == s.getOwner() ? j : -1;
+	}
+
+	// the margin, but never more than the pair has now; ships already that close only have to not close in
+	private static double shipClearance(final double distance) {
+		return Math.min(2 * SHIP_RADIUS + SHIP_MARGIN, 0.5 * (distance + 2 * SHIP_RADIUS));
+	}
+
+	private void addNeighbour(final int i, final int agent, final double px, final double py, final double vx, final double vy,
+			final double radius, final boolean isStatic) {
+		if (neighbours == nX.length) {
+			final int n = Math.max(16, neighbours * 2);
+			nAgent = Arrays.copyOf(nAgent, n);
+			nX = Arrays.copyOf(nX, n);
+			nY = Arrays.copyOf(nY, n);
+			nVX = Arrays.copyOf(nVX, n);
+			nVY = Arrays.copyOf(nVY, n);
+			nRadius = Arrays.copyOf(nRadius, n);
+			nGap = Arrays.copyOf(nGap, n);
+			nStatic = Arrays.copyOf(nStatic, n);
+		}
+		nAgent[neighbours] = agent;
+		nX[neighbours] = px;
+		nY[neighbours] = py;
+		nVX[neighbours] = vx;
+		nVY[neighbours] = vy;
+		nRadius[neighbours] = radius;
+		nStatic[neighbours] = isStatic;
+		nGap[neighbours] = Math.hypot(px - x[i], py - y[i]) - (isStatic ? radius : PAIR_RADIUS + Math.hypot(vx, vy));
+		neighbours++;
+	}
+
+	// one ORCA half plane per neighbour, with a time horizon of one turn
+	private void buildHalfPlanes(final int i) {
+		lines = 0;
+		ensureLines(nStart[i + 1] - nStart[i]);
+		// fixed obstacles first, so the fallback program keeps them hard
+		for (int pass = 0; pass < 2; pass++) {
+			for (int k = nStart[i]; k < nStart[i + 1]; k++) {
+				if ((nAgent[k] < 0) == (pass == 0) && canReach(i, k)) {
+					addHalfPlane(i, k);
+				}
+			}
+			if (pass == 0) {
+				fixedLines = lines;
+			}
+		}
+	}
+
+	// a neighbour the agent can't get within nRadius of at its planned thrust needs no half plane;
+	// leaving those out keeps the program from running out of room for nothing
+	private boolean canReach(final int i, final int k) {
+		return Math.hypot(nX[k] - x[i], nY[k] - y[i]) - nRadius[k] - Math.hypot(nVX[k], nVY[k]) <= maxThrust[i];
+	}
+
+	private void addHalfPlane(final int i, final int k) {
+		final double relX = nX[k] - x[i];
+		final double relY = nY[k] - y[i];
+		final double relVX = prefX[i] - nVX[k];
+		final double relVY = prefY[i] - nVY[k];
+		final double distSq = relX * relX + relY * relY;
+		final double r = nRadius[k];
+		final double rSq = r * r;
+
+		double lineDirX, lineDirY, uX, uY;
+		// velocity obstacle truncated at one turn: relative velocities that bring the pair within r before then
+		final double wX = relVX - relX;
+		final double wY = relVY - relY;
+		final double wLengthSq = wX * wX + wY * wY;
+		final double dot1 = wX * relX + wY * relY;
+		if (distSq <= rSq || (dot1 < 0 && dot1 * dot1 > rSq * wLengthSq)) {
+			// nearest boundary is the cut-off circle (or the pair already overlaps)
+			final double wLength = Math.sqrt(wLengthSq);
+			if (wLength < EPS) {
+				// no preferred direction out; push straight away from the neighbour
+				final double d = Math.max(Math.sqrt(distSq), EPS);
+				lineDirX = relY / d;
+				lineDirY = -relX / d;
+				uX = -relX / d * r;
+				uY = -relY / d * r;
+			} else {
+				final double unitX = wX / wLength;
+				final double unitY = wY / wLength;
+				lineDirX = unitY;
+				lineDirY = -unitX;
+				uX = (r - wLength) * unitX;
+				uY = (r - wLength) * unitY;
+			}
+		} else {
+			// nearest boundary is one of the legs of the cone
+			final double leg = Math.sqrt(distSq - rSq);
+			if (relX * wY - relY * wX > 0) {
+				lineDirX = (relX * leg - relY * r) / distSq;
+				lineDirY = (relX * r + relY * leg) / distSq;
+			} else {
+				lineDirX = -(relX * leg + relY * r) / distSq;
+				lineDirY = -(-relX * r + relY * leg) / distSq;
+			}
+			final double dot2 = relVX * lineDirX + relVY * lineDirY;
+			uX = dot2 * lineDirX - relVX;
+			uY = dot2 * lineDirY - relVY;
+		}
+
+		// another agent takes the other half
+		final double share = nAgent[k] >= 0 ? 0.5 : 1.0;
+		pointX[lines] = prefX[i] + share * uX;
+		pointY[lines] = prefY[i] + share * uY;
+		dirX[lines] = lineDirX;
+		dirY[lines] = lineDirY;
+		lines++;
+	}
+
+	private void solveVelocity(final int i) {
+		final double radius = maxThrust[i];
+		final int failed = linearProgram2(pointX, pointY, dirX, dirY, lines, radius, prefX[i], prefY[i], false);
+		feasible = failed == lines;
+		if (!feasible) {
+			linearProgram3(fixedLines, failed, radius);
+		}
+	}
+
+	/*
+	 * Snaps the velocity to a legal move inside all half planes, closest to the
+	 * planned velocity: first among the angles and thrusts next to it, then
+	 * among every legal move. If the program already had no room, only the
+	 * least-violating move next to its velocity; repair() sorts those out.
+	 */
+	private void snapToLegalMove(final int i) {
+		bestViolation = Double.POSITIVE_INFINITY;
+		bestDistSq = Double.POSITIVE_INFINITY;
+
+		// the plan itself, if it is allowed, can't be beaten
+		offer(i, plannedAngle[i], maxThrust[i]);
+		if (bestViolation > 0 || bestDistSq > 0) {
+			final double speed = Math.hypot(resultX, resultY);
+			final int centerAngle = Util.angleRadToDegClipped(Math.atan2(resultY, resultX));
+			final int lowThrust = Math.max(0, (int) Math.floor(speed) - 1);
+			final int highThrust = Math.min(maxThrust[i], (int) Math.ceil(speed));
+			for (int t = lowThrust; t <= highThrust; t++) {
+				for (int a = centerAngle - ANGLE_WINDOW; a <= centerAngle + ANGLE_WINDOW; a++) {
+					offer(i, (a + 360) % 360, t);
+				}
+			}
+		}
+		if (bestViolation > 0 && feasible) {
+			// nearest to the plan first, so the first move inside is the one
+			for (int k = 0; k < MoveLattice.nearestCount(maxThrust[i]) && bestViolation > 0; k++) {
+				final int move = MoveLattice.rotate(MoveLattice.nearest(maxThrust[i], k), plannedAngle[i]);
+				offer(i, MoveLattice.angle(move), MoveLattice.thrust(move));
+			}
+		}
+		resultAngle[i] = bestAngle;
+		resultThrust[i] = bestThrust;
+	}
+
+	private double bestViolation, bestDistSq;
+	private int bestAngle, bestThrust;
+
+	private void offer(final int i, final int angleDeg, final int thrust) {
+		final double vx = MoveLattice.dx(angleDeg, thrust);
+		final double vy = MoveLattice.dy(angleDeg, thrust);
+		double violation = 0;
+		for (int l = 0; l < lines; l++) {
+			final double v = dirX[l] * (pointY[l] - vy) - dirY[l] * (pointX[l] - vx);
+			if (v > violation) {
+				violation = v;
+			}
+		}
+		if (violation <= EPS) {
+			violation = 0;
+		}
+		final double dx = vx - prefX[i];
+		final double dy = vy - prefY[i];
+		final double distSq = dx * dx + dy * dy;
+		if (violation < bestViolation || (violation == bestViolation && distSq < bestDistSq)) {
+			bestViolation = violation;
+			bestDistSq = distSq;
+			bestAngle = thrust == 0 ? 0 : angleDeg;
+			bestThrust = thrust;
+		}
+	}
+
+	/*
+	 * The exact tests on the snapped moves. A ship that still collides with
+	 * something gets the legal move closest to its plan that is clear of
+	 * everything, given the others' moves so far, or stops if there is none.
+	 * A changed move can spoil one that was checked before it, so this runs
+	 * until a pass changes nothing (or gives up after a few).
+	 */
+	private void repair() {
+		boolean changed = true;
+		for (int pass = 0; changed && pass < REPAIR_PASSES; pass++) {
+			changed = false;
+			for (int i = 0; i < agents; i++) {
+				if (maxThrust[i] == 0) {
+					continue;
+				}
+				blocker = nStart[i];
+				if (isClear(i, resultAngle[i], resultThrust[i])) {
+					continue;
+				}
+				Log.debug("ORCA move of ship %d still collides; searching legal moves", ship[i].getId());
+				// nearest to the plan first; stopping is the last resort even if it isn't clear
+				int bestA = 0, bestT = 0;
+				for (int k = 0; k < MoveLattice.nearestCount(maxThrust[i]); k++) {
+					final int move = MoveLattice.rotate(MoveLattice.nearest(maxThrust[i], k), plannedAngle[i]);
+					if (isClear(i, MoveLattice.angle(move), MoveLattice.thrust(move))) {
+						bestA = MoveLattice.angle(move);
+						bestT = MoveLattice.thrust(move);
+						break;
+					}
+				}
+				if (bestA != resultAngle[i] || bestT != resultThrust[i]) {
+					resultAngle[i] = bestA;
+					resultThrust[i] = bestT;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	// the exact tests the rest of the bot uses, against agent i's neighbours
+	private boolean isClear(final int i, final int angleDeg, final int thrust) {
+		final double vx = MoveLattice.dx(angleDeg, thrust);
+		final double vy = MoveLattice.dy(angleDeg, thrust);
+		// neighbouring candidates tend to hit the same thing, so try that first
+		if (blocker < nStart[i + 1] && hits(i, blocker, vx, vy, thrust)) {
+			return false;
+		}
+		for (int k = nStart[i]; k < nStart[i + 1]; k++) {
+			if (k != blocker && hits(i, k, vx, vy, thrust)) {
+				blocker = k;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean hits(final int i, final int k, final double vx, final double vy, final int thrust) {
+		if (nGap[k] > thrust + EPS) {
+			return false;
+		}
+		if (nStatic[k]) {
+			return Collision.segmentCircleIntersect(x[i], y[i], x[i] + vx, y[i] + vy,
+					nX[k], nY[k], nRadius[k] - Constants.FORECAST_FUDGE_FACTOR, Constants.FORECAST_FUDGE_FACTOR);
+		}
+		double ovx = nVX[k], ovy = nVY[k];
+		final int j = nAgent[k];
+		if (j >= 0) {
+			// other agents as resolved so far
+			ovx = MoveLattice.dx(resultAngle[j], resultThrust[j]);
+			ovy = MoveLattice.dy(resultAngle[j], resultThrust[j]);
+		}
+		final double dix = nX[k] - x[i], diy = nY[k] - y[i];
+		return Collision.segmentCircleIntersect(dix, diy, dix + ovx - vx, diy + ovy - vy,
+				0, 0, 2 * SHIP_RADIUS, SHIP_RADIUS / 1000.0);
+	}
+
+	private void ensureLines(final int n) {
+		if (pointX.length < n) {
+			final int size = Math.max(16, n * 2);
+			pointX = new double[size];
+			pointY = new double[size];
+			dirX = new double[size];
+			dirY = new double[size];
+			projPointX = new double[size];
+			projPointY = new double[size];
+			projDirX = new double[size];
+			projDirY = new double[size];
+		}
+	}
+
+	/*
+	 * The linear programs below follow the RVO2 library: the optimum on line k
+	 * given lines 0..k-1, then incrementally over all lines, then the velocity
+	 * that minimizes the largest violation when the lines leave no room.
+	 */
+	private boolean linearProgram1(final double[] px, final double[] py, final double[] dx, final double[] dy,
+			final int k, final double radius, final double optX, final double optY, final boolean directionOpt) {
+		final double dot = px[k] * dx[k] + py[k] * dy[k];
+		final double discriminant = dot * dot + radius * radius - (px[k] * px[k] + py[k] * py[k]);
+		if (discriminant < 0) {
+			// the speed limit circle misses line k
+			return false;
+		}
+		final double sqrtDisc = Math.sqrt(discriminant);
+		double tLeft = -dot - sqrtDisc;
+		double tRight = -dot + sqrtDisc;
+
+		for (int l = 0; l < k; l++) {
+			final double denominator = dx[k] * dy[l] - dy[k] * dx[l];
+			final double numerator = dx[l] * (py[k] - py[l]) - dy[l] * (px[k] - px[l]);
+			if (Math.abs(denominator) <= EPS) {
+				// parallel lines
+				if (numerator < 0) {
+					return false;
+				}
+				continue;
+			}
+			final double t = numerator / denominator;
+			if (denominator >= 0) {
+				tRight = Math.min(tRight, t);
+			} else {
+				tLeft = Math.max(tLeft, t);
+			}
+			if (tLeft > tRight) {
+				return false;
+			}
+		}
+
+		double t;
+		if (directionOpt) {
+			t = optX * dx[k] + optY * dy[k] > 0 ? tRight : tLeft;
+		} else {
+			t = dx[k] * (optX - px[k]) + dy[k] * (optY - py[k]);
+			t = Math.max(tLeft, Math.min(tRight, t));
+		}
+		resultX = px[k] + t * dx[k];
+		resultY = py[k] + t * dy[k];
+		return true;
+	}
+
+	// @return the number of lines satisfied before one could not be; n if all were
+	private int linearProgram2(final double[] px, final double[] py, final double[] dx, final double[] dy,
+			final int n, final double radius, final double optX, final double optY, final boolean directionOpt) {
+		final double optLengthSq = optX * optX + optY * optY;
+		if (directionOpt) {
+			resultX = optX * radius;
+			resultY = optY * radius;
+		} else if (optLengthSq > radius * radius) {
+			final double optLength = Math.sqrt(optLengthSq);
+			resultX = optX / optLength * radius;
+			resultY = optY / optLength * radius;
+		} else {
+			resultX = optX;
+			resultY = optY;
+		}
+
+		for (int k = 0; k < n; k++) {
+			if (dx[k] * (py[k] - resultY) - dy[k] * (px[k] - resultX) > 0) {
+				final double keepX = resultX, keepY = resultY;
+				if (!linearProgram1(px, py, dx, dy, k, radius, optX, optY, directionOpt)) {
+					resultX = keepX;
+					resultY = keepY;
+					return k;
+				}
+			}
+		}
+		return n;
+	}
+
+	private void linearProgram3(final int numFixed, final int begin, final double radius) {
+		double distance = 0;
+		for (int k = begin; k < lines; k++) {
+			if (dirX[k] * (pointY[k] - resultY) - dirY[k] * (pointX[k] - resultX) <= distance) {
+				continue;
+			}
+			// the fixed lines stay as they are; each agent line becomes its bisector with line k
+			int proj = 0;
+			for (int l = 0; l < numFixed; l++) {
+				projPointX[proj] = pointX[l];
+				projPointY[proj] = pointY[l];
+				projDirX[proj] = dirX[l];
+				projDirY[proj] = dirY[l];
+				proj++;
+			}
+			for (int l = numFixed; l < k; l++) {
+				final double determinant = dirX[k] * dirY[l] - dirY[k] * dirX[l];
+				if (Math.abs(determinant) <= EPS) {
+					if (dirX[k] * dirX[l] + dirY[k] * dirY[l] > 0) {
+						// same direction
+						continue;
+					}
+					projPointX[proj] = 0.5 * (pointX[k] + pointX[l]);
+					projPointY[proj] = 0.5 * (pointY[k] + pointY[l]);
+				} else {
+					final double s = (dirX[l] * (pointY[k] - pointY[l]) - dirY[l] * (pointX[k] - pointX[l])) / determinant;
+					projPointX[proj] = pointX[k] + s * dirX[k];
+					projPointY[proj] = pointY[k] + s * dirY[k];
+				}
+				final double bx = dirX[l] - dirX[k];
+				final double by = dirY[l] - dirY[k];
+				final double bLength = Math.hypot(bx, by);
+				projDirX[proj] = bx / bLength;
+				projDirY[proj] = by / bLength;
+				proj++;
+			}
+
+			final double keepX = resultX, keepY = resultY;
+			if (linearProgram2(projPointX, projPointY, projDirX, projDirY, proj, radius, -dirY[k], dirX[k], true) < proj) {
+				// can only happen through rounding; the last result is still the best there is
+				resultX = keepX;
+				resultY = keepY;
+			}
+			distance = dirX[k] * (pointY[k] - resultY) - dirY[k] * (pointX[k] - resultX);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package hlt2;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits index loops across a ForkJoinPool sized to the machine. The body is
+ * called once per index and must only write state owned by that index (its own
+ * array slot or row), so the result is the same whichever thread runs it.
+ * With -Dhlt.sequential=true every loop runs in order on the calling thread,
+ * which is the reference to compare the parallel path against.
+ */
+public class Parallel {
+
+	public static final boolean SEQUENTIAL = Boolean.getBoolean("hlt.sequential");
+	public static final int THREADS = Math.max(1, Integer.getInteger("hlt.threads", Runtime.getRuntime().availableProcessors()));
+
+	// a few chunks per worker, so an uneven chunk doesn't leave the others idle
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static volatile ForkJoinPool pool;
+
+	private Parallel() {
+	}
+
+	/**
+	 * Runs body(i) for i in [0, n). Loops shorter than threshold, or any loop
+	 * when there is only one thread, stay on the calling thread.
+	 */
+	public static void forEach(final int n, final int threshold, final IntConsumer body) {
+		if (SEQUENTIAL || THREADS == 1 || n < threshold) {
+			for (int i = 0; i < n; i++) {
+				body.accept(i);
+			}
+			return;
+		}
+		final int grain = Math.max(1, n / (THREADS * CHUNKS_PER_THREAD));
+		pool().invoke(new Range(0, n, grain, body));
+	}
+
+	private static ForkJoinPool pool() {
+		ForkJoinPool p = pool;
+		if (p == null) {
+			synchronized (Parallel.class) {
+				p = pool;
+				if (p == null) {
+					pool = p = new ForkJoinPool(THREADS, Worker::new, null, false);
+				}
+			}
+		}
+		return p;
+	}
+
+	// a pool thread, with its own metrics counters
+	static final class Worker extends ForkJoinWorkerThread {
+		final Metrics.Counters counters = Metrics.newCounters();
+
+		Worker(final ForkJoinPool pool) {
+			super(pool);
+		}
+	}
+
+	private static class Range extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to, grain;
+		private final IntConsumer body;
+
+		Range(final int from, final int to, final int grain, final IntConsumer body) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				for (int i = from; i < to; i++) {
+					body.accept(i);
+				}
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new Range(from, mid, grain, body), new Range(mid, to, grain, body));
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shortest ways around the planets. Planets never move, so the graph is built
+ * once, at the start of the game: a ring of NODES_PER_PLANET points around
+ * each planet, just outside the distance a segment has to keep from it, and
+ * an edge between every two points that can see each other past all planets.
+ * The ring is a polygon around the planet, so the way from one side of a
+ * planet to the other runs along its edges.
+ *
+ * Each edge remembers how many planets block it. When a planet is destroyed
+ * the edges it blocked are counted down, and those it alone blocked open up.
+ *
+ * A query runs A* from an origin to the point next to a target planet. The
+ * path only depends on which cell of the map the origin is in, so it is
+ * cached per (origin cell, target planet) until a planet is destroyed. The
+ * caller aims at the furthest point of the path it can already see.
+ *
+ * Not thread safe.
+ */
+public class PlanetGraph {
+
+	public static final int NODES_PER_PLANET = 16;
+	public static final double CELL_SIZE = 4.0;
+
+	// what navigation keeps between a segment and a planet's surface
+	private static final double CLEARANCE = Constants.FORECAST_FUDGE_FACTOR;
+	// nodes sit this much further out, so edges along a ring stay clear of it
+	private static final double NODE_MARGIN = 0.3;
+
+	private final double width, height;
+	private final int cellsAcross;
+
+	private final int numPlanets;
+	private final int[] planetId;
+	private final double[] planetX, planetY, planetRadius;
+	private final boolean[] alive;
+	private final HashMap<Integer, Integer> planetIndex = new HashMap<>();
+
+	private final int numNodes;
+	private final double[] nodeX, nodeY;
+	// planets in the way of each pair of nodes, n * n; an edge is open at 0
+	private final byte[] blockers;
+	private int[][] neighbours;
+	private boolean neighboursStale = true;
+
+	private final HashMap<Long, double[]> paths = new HashMap<>();
+
+	// search scratch
+	private final double[] cost;
+	private final int[] previous;
+	private final boolean[] closed;
+	private long[] heap = new long[64];
+	private int heapSize;
+	private int queries = 0;
+
+	public PlanetGraph(final GameMap gameMap) {
+		width = gameMap.getWidth();
+		height = gameMap.getHeight();
+		cellsAcross = (int) Math.ceil(width / CELL_SIZE) + 1;
+
+		final Map<Integer, Planet> planets = gameMap.getAllPlanets();
+		numPlanets = planets.size();
+		planetId = new int[numPlanets];
+		planetX = new double[numPlanets];
+		planetY = new double[numPlanets];
+		planetRadius = new double[numPlanets];
+		alive = new boolean[numPlanets];
+		int p = 0;
+		for (final Planet planet : planets.values()) {
+			planetId[p] = planet.getId();
+			planetX[p] = planet.getXPos();
+			planetY[p] = planet.getYPos();
+			planetRadius[p] = planet.getRadius();
+			alive[p] = true;
+			planetIndex.put(planet.getId(), p);
+			p++;
+		}
+
+		final double[] xs = new double[numPlanets * NODES_PER_PLANET];
+		final double[] ys = new double[numPlanets * NODES_PER_PLANET];
+		int n = 0;
+		for (p = 0; p < numPlanets; p++) {
+			final double ring = (planetRadius[p] + CLEARANCE + NODE_MARGIN) / Math.cos(Math.PI / NODES_PER_PLANET);
+			for (int k = 0; k < NODES_PER_PLANET; k++) {
+				final double a = 2 * Math.PI * k / NODES_PER_PLANET;
+				final double x = planetX[p] + ring * Math.cos(a);
+				final double y = planetY[p] + ring * Math.sin(a);
+				if (isOpen(x, y)) {
+					xs[n] = x;
+					ys[n] = y;
+					n++;
+				}
+			}
+		}
+		numNodes = n;
+		nodeX = Arrays.copyOf(xs, n);
+		nodeY = Arrays.copyOf(ys, n);
+
+		blockers = new byte[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				int count = 0;
+				for (p = 0; p < numPlanets; p++) {
+					if (blocks(p, nodeX[i], nodeY[i], nodeX[j], nodeY[j])) {
+						count++;
+					}
+				}
+				final byte b = (byte) Math.min(count, Byte.MAX_VALUE);
+				blockers[i * n + j] = b;
+				blockers[j * n + i] = b;
+			}
+		}
+
+		// one extra node each for the origin and the goal of a query
+		cost = new double[n + 2];
+		previous = new int[n + 2];
+		closed = new boolean[n + 2];
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/** Opens the edges a planet blocked; for GameMap's PLANET_DESTROYED events */
+	public void planetDestroyed(final int id) {
+		final Integer p = planetIndex.get(id);
+		if (p == null || !alive[p]) {
+			return;
+		}
+		alive[p] = false;
+		for (int i = 0; i < numNodes; i++) {
+			for (int j = i + 1; j < numNodes; j++) {
+				final int e = i * numNodes + j;
+				if (blockers[e] > 0 && blockers[e] < Byte.MAX_VALUE
+						&& blocks(p, nodeX[i], nodeY[i], nodeX[j], nodeY[j])) {
+					blockers[e]--;
+					blockers[j * numNodes + i]--;
+				}
+			}
+		}
+		neighboursStale = true;
+		Log.debug("planet %d destroyed; %d paths dropped", planetId[p], paths.size());
+		paths.clear();
+	}
+
+	/**
+	 * Where a ship at start should head to reach goal, next to the planet
+	 * target: goal itself if nothing is in the way, otherwise the furthest
+	 * point of the shortest way around the planets that the ship can see.
+	 * Planets whose clearance the ship is already inside are ignored.
+	 * If no point of the way is visible the goal is returned, and ordinary
+	 * navigation has to sort it out.
+	 */
+	public Position waypoint(final Position start, final Planet target, final Position goal) {
+		final double sx = start.getXPos();
+		final double sy = start.getYPos();
+		if (!isBlockedFrom(sx, sy, goal.getXPos(), goal.getYPos())) {
+			return goal;
+		}
+		final double[] path = path(sx, sy, target);
+		if (path == null) {
+			return goal;
+		}
+		// path holds x, y pairs from the first waypoint to the goal; skip ahead as far as the ship can see
+		for (int k = path.length - 2; k >= 0; k -= 2) {
+			if (!isBlockedFrom(sx, sy, path[k], path[k + 1])) {
+				return new Position(path[k], path[k + 1]);
+			}
+		}
+		return goal;
+	}
+
+	/** @return the way from the cell of (x, y) to the planet, or null if there is none */
+	private double[] path(final double x, final double y, final Planet target) {
+		final Integer t = planetIndex.get(target.getId());
+		if (t == null) {
+			return null;
+		}
+		final int cx = (int) Math.max(0, Math.floor(x / CELL_SIZE));
+		final int cy = (int) Math.max(0, Math.floor(y / CELL_SIZE));
+		final long key = ((long) (cy * cellsAcross + cx) << 32) | t;
+		if (paths.containsKey(key)) {
+			return paths.get(key);
+		}
+		final Position origin = new Position((cx + 0.5) * CELL_SIZE, (cy + 0.5) * CELL_SIZE);
+		final Position goal = origin.getClosestPoint(target);
+		final double[] path = search(origin.getXPos(), origin.getYPos(), goal.getXPos(), goal.getYPos());
+		paths.put(key, path);
+		return path;
+	}
+
+	/*
+	 * A* from (ox, oy) to (gx, gy) over the nodes, with the two ends as extra
+	 * nodes n and n + 1. The ends may lie inside a planet's clearance (a ship
+	 * that just undocked, say), so their own edges skip planets that already
+	 * cover them.
+	 */
+	private double[] search(final double ox, final double oy, final double gx, final double gy) {
+		if (neighboursStale) {
+			buildNeighbours();
+		}
+		queries++;
+		final int n = numNodes;
+		final int origin = n, goal = n + 1;
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+		Arrays.fill(closed, false);
+		heapSize = 0;
+
+		final boolean[] seesGoal = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			seesGoal[i] = !isBlockedFrom(gx, gy, nodeX[i], nodeY[i]);
+		}
+
+		cost[origin] = 0;
+		push(distance(ox, oy, gx, gy), origin);
+		while (heapSize > 0) {
+			final int u = pop();
+			if (closed[u]) {
+				continue;
+			}
+			closed[u] = true;
+			if (u == goal) {
+				break;
+			}
+			if (u == origin) {
+				for (int v = 0; v < n; v++) {
+					if (!isBlockedFrom(ox, oy, nodeX[v], nodeY[v])) {
+						relax(u, v, distance(ox, oy, nodeX[v], nodeY[v]), gx, gy);
+					}
+				}
+				continue;
+			}
+			for (final int v : neighbours[u]) {
+				relax(u, v, distance(nodeX[u], nodeY[u], nodeX[v], nodeY[v]), gx, gy);
+			}
+			if (seesGoal[u]) {
+				relax(u, goal, distance(nodeX[u], nodeY[u], gx, gy), gx, gy);
+			}
+		}
+		if (previous[goal] < 0) {
+			Log.debug("no way from (%.1f, %.1f) to (%.1f, %.1f)", ox, oy, gx, gy);
+			return null;
+		}
+
+		int length = 0;
+		for (int v = goal; v != origin; v = previous[v]) {
+			length++;
+		}
+		final double[] path = new double[2 * length];
+		int k = length;
+		for (int v = goal; v != origin; v = previous[v]) {
+			k--;
+			path[2 * k] = v == goal ? gx : nodeX[v];
+			path[2 * k + 1] = v == goal ? gy : nodeY[v];
+		}
+		return path;
+	}
+
+	private void relax(final int u, final int v, final double edge, final double gx, final double gy) {
+		if (closed[v]) {
+			return;
+		}
+		final double c = cost[u] + edge;
+		if (c < cost[v]) {
+			cost[v] = c;
+			previous[v] = u;
+			final double h = v < numNodes ? distance(nodeX[v], nodeY[v], gx, gy) : 0;
+			push(c + h, v);
+		}
+	}
+
+	// keys are the estimate's float bits over the node; estimates are never negative, so they sort as numbers
+	private void push(final double estimate, final int node) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize * 2);
+		}
+		final long key = ((long) Float.floatToIntBits((float) estimate) << 32) | node;
+		int i = heapSize++;
+		while (i > 0 && heap[(i - 1) / 2] > key) {
+			heap[i] = heap[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heap[i] = key;
+	}
+
+	private int pop() {
+		final int node = (int) heap[0];
+		final long last = heap[--heapSize];
+		int i = 0;
+		for (;;) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= last) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return node;
+	}
+
+	private void buildNeighbours() {
+		final int n = numNodes;
+		neighbours = new int[n][];
+		final int[] open = new int[n];
+		for (int i = 0; i < n; i++) {
+			int m = 0;
+			for (int j = 0; j < n; j++) {
+				if (j != i && blockers[i * n + j] == 0) {
+					open[m++] = j;
+				}
+			}
+			neighbours[i] = Arrays.copyOf(open, m);
+		}
+		neighboursStale = false;
+	}
+
+	/** @return how many searches have run; the rest were served from the cache */
+	public int getQueries() {
+		return queries;
+	}
+
+	// on the map and outside every planet's clearance
+	private boolean isOpen(final double x, final double y) {
+		if (x < Constants.SHIP_RADIUS || y < Constants.SHIP_RADIUS
+				|| x > width - Constants.SHIP_RADIUS || y > height - Constants.SHIP_RADIUS) {
+			return false;
+		}
+		for (int p = 0; p < numPlanets; p++) {
+			if (distance(x, y, planetX[p], planetY[p]) <= planetRadius[p] + CLEARANCE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// as isBlocked, but ignoring planets whose clearance already covers (x1, y1)
+	private boolean isBlockedFrom(final double x1, final double y1, final double x2, final double y2) {
+		for (int p = 0; p < numPlanets; p++) {
+			if (alive[p] && distance(x1, y1, planetX[p], planetY[p]) > planetRadius[p] + CLEARANCE
+					&& blocks(p, x1, y1, x2, y2)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean blocks(final int p, final double x1, final double y1, final double x2, final double y2) {
+		final double r = planetRadius[p] + CLEARANCE;
+		// boxes apart: no need for the exact test
+		if (Math.max(x1, x2) < planetX[p] - r || Math.min(x1, x2) > planetX[p] + r
+				|| Math.max(y1, y2) < planetY[p] - r || Math.min(y1, y2) > planetY[p] + r) {
+			return false;
+		}
+		return Collision.segmentCircleIntersect(x1, y1, x2, y2, planetX[p], planetY[p], planetRadius[p], CLEARANCE);
+	}
+
+	private static double distance(final double x1, final double y1, final double x2, final double y2) {
+		final double dx = x1 - x2;
+		final double dy = y1 - y2;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
@@ -0,0 +1,107 @@
+package hlt2;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Passes engine traffic through unchanged while writing a replay file: every
+ * input line as it was read and every move string as it was sent, deflated.
+ * The stream is sync-flushed after each turn's moves, so the file is usable
+ * even if the engine kills the bot mid-game. ReplayEngineIO reads it back.
+ *
+ * Format: MAGIC, VERSION, bot name (UTF), then records of one tag byte
+ * followed by an int length and that many bytes.
+ */
+public class RecordingEngineIO implements EngineIO {
+
+    static final int MAGIC = 0x484C5452; // "HLTR"
+    static final byte VERSION = 1;
+
+    static final byte TAG_INPUT = 1;
+    static final byte TAG_OUTPUT = 2;
+    static final byte TAG_MOVES = 3;
+
+    private final EngineIO delegate;
+    private DataOutputStream out;
+
+    public RecordingEngineIO(final EngineIO delegate, final String path, final String botName) throws IOException {
+        this(delegate, new FileOutputStream(path), botName);
+    }
+
+    public RecordingEngineIO(final EngineIO delegate, final OutputStream sink, final String botName) throws IOException {
+        this.delegate = delegate;
+        out = new DataOutputStream(new DeflaterOutputStream(
+                new BufferedOutputStream(sink, 1 << 16), new Deflater(Deflater.BEST_SPEED), 1 << 16, true));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(botName);
+    }
+
+    @Override
+    public void readLine(final Metadata into) {
+        delegate.readLine(into);
+        recordInput(into);
+    }
+
+    /** Records a line that was read before recording started */
+    void recordInput(final Metadata line) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(TAG_INPUT);
+            line.writeTo(out);
+        } catch (IOException e) {
+            stopRecording(e);
+        }
+    }
+
+    @Override
+    public void writeLine(final String line) {
+        delegate.writeLine(line);
+        record(TAG_OUTPUT, line);
+    }
+
+    @Override
+    public void writeMoves(final Iterable<Move> moves) {
+        delegate.writeMoves(moves);
+        record(TAG_MOVES, Networking.formatMoves(moves));
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+    }
+
+    private void record(final byte tag, final String text) {
+        if (out == null) {
+            return;
+        }
+        try {
+            final byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+            out.writeByte(tag);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            stopRecording(e);
+        }
+    }
+
+    // a broken replay file must not take the bot down with it
+    private void stopRecording(final IOException e) {
+        Log.log(Log.Level.WARN, "replay recording stopped: " + e);
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
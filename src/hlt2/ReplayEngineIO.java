@@ -0,0 +1,142 @@
+package hlt2;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Plays a file written by RecordingEngineIO back to a bot: the recorded input
+ * lines are served in order, and each set of moves the bot sends is compared
+ * with the moves sent at the same point of the recorded game.
+ */
+public class ReplayEngineIO implements EngineIO {
+
+    private final DataInputStream in;
+    private final String botName;
+    private final Metadata pending = new Metadata();
+    private boolean hasPending = false;
+    private boolean exhausted = false;
+
+    // recorded move strings not yet matched against a writeMoves() call
+    private final ArrayList<String> recordedMoves = new ArrayList<>();
+    private int movesCompared = 0;
+    private int movesMatched = 0;
+    private final ArrayList<Integer> mismatchedTurns = new ArrayList<>();
+    private String lastExpected, lastActual;
+
+    public ReplayEngineIO(final String path) throws IOException {
+        this(new FileInputStream(path));
+    }
+
+    public ReplayEngineIO(final InputStream source) throws IOException {
+        in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(source, 1 << 16), new Inflater(), 1 << 16));
+        if (in.readInt() != RecordingEngineIO.MAGIC) {
+            throw new IOException("not a replay file");
+        }
+        final byte version = in.readByte();
+        if (version != RecordingEngineIO.VERSION) {
+            throw new IOException("unsupported replay version " + version);
+        }
+        botName = in.readUTF();
+    }
+
+    public String getBotName() {
+        return botName;
+    }
+
+    /** @return whether another input line is left for the bot to read */
+    public boolean hasMoreInput() {
+        fill();
+        return hasPending;
+    }
+
+    @Override
+    public void readLine(final Metadata into) {
+        fill();
+        if (!hasPending) {
+            throw new IllegalStateException("replay has no more input");
+        }
+        hasPending = false;
+        into.copyFrom(pending);
+    }
+
+    @Override
+    public void writeLine(final String line) {
+    }
+
+    @Override
+    public void writeMoves(final Iterable<Move> moves) {
+        final String actual = Networking.formatMoves(moves);
+        // moves for this turn were recorded before the next input line
+        fill();
+        final String expected = recordedMoves.isEmpty() ? null : recordedMoves.remove(0);
+        movesCompared++;
+        if (actual.equals(expected)) {
+            movesMatched++;
+        } else {
+            mismatchedTurns.add(movesCompared);
+            lastExpected = expected;
+            lastActual = actual;
+        }
+    }
+
+    public int getMovesCompared() {
+        return movesCompared;
+    }
+
+    public int getMovesMatched() {
+        return movesMatched;
+    }
+
+    /** @return 1-based turn numbers whose moves differed from the recording */
+    public ArrayList<Integer> getMismatchedTurns() {
+        return mismatchedTurns;
+    }
+
+    public String getLastExpected() {
+        return lastExpected;
+    }
+
+    public String getLastActual() {
+        return lastActual;
+    }
+
+    // reads ahead to the next input line, collecting any move records on the way
+    private void fill() {
+        while (!hasPending && !exhausted) {
+            try {
+                final byte tag = in.readByte();
+                switch (tag) {
+                case RecordingEngineIO.TAG_INPUT:
+                    pending.readFrom(in);
+                    hasPending = true;
+                    break;
+                case RecordingEngineIO.TAG_MOVES:
+                    recordedMoves.add(readString());
+                    break;
+                default:
+                    readString(); // bot name and anything newer we don't replay
+                    break;
+                }
+            } catch (EOFException e) {
+                exhausted = true;
+            } catch (IOException e) {
+                // a file cut off mid-record (bot killed while writing) ends the replay there
+                exhausted = true;
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
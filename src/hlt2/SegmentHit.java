@@ -0,0 +1,36 @@
+package hlt2;
+
+/**
+ * The nearest obstacle found on a segment: the entity, and t in [0, 1] where
+ * start + t * (target - start) first comes within its radius plus the
+ * forecast fudge. Reused from query to query, so copy what you keep.
+ */
+public class SegmentHit {
+	private Entity entity;
+	private double t;
+
+	public Entity getEntity() {
+		return entity;
+	}
+
+	public double getT() {
+		return t;
+	}
+
+	public boolean isHit() {
+		return entity != null;
+	}
+
+	void clear() {
+		entity = null;
+		t = Double.POSITIVE_INFINITY;
+	}
+
+	// keeps the earlier of this and the current hit
+	void offer(final Entity candidate, final double candidateT) {
+		if (candidateT < t) {
+			entity = candidate;
+			t = candidateT;
+		}
+	}
+}
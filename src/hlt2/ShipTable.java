@@ -0,0 +1,130 @@
+package hlt2;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays view of every ship on the map. Row i describes the same ship
+ * as GameMap.getAllShips().get(i). The arrays are refilled in place each turn
+ * and only grow, so reading a frame does not allocate them again.
+ */
+public class ShipTable {
+
+	private static final Ship.DockingStatus[] DOCKING_STATUSES = Ship.DockingStatus.values();
+
+	private int size = 0;
+	private int[] id = new int[0];
+	private int[] owner = new int[0];
+	private int[] health = new int[0];
+	private int[] dockingStatus = new int[0];
+	private int[] dockedPlanet = new int[0];
+	private int[] dockingProgress = new int[0];
+	private int[] cooldown = new int[0];
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private Ship[] ships = new Ship[0];
+
+	void clear() {
+		size = 0;
+	}
+
+	// appends a row and returns its index; the facade object is set separately
+	int add(final int shipId, final int shipOwner, final double xPos, final double yPos, final int shipHealth,
+			final int status, final int planet, final int progress, final int weaponCooldown) {
+		if (size == id.length) {
+			grow(Math.max(64, size * 2));
+		}
+		final int i = size++;
+		id[i] = shipId;
+		owner[i] = shipOwner;
+		x[i] = xPos;
+		y[i] = yPos;
+		health[i] = shipHealth;
+		dockingStatus[i] = status;
+		dockedPlanet[i] = planet;
+		dockingProgress[i] = progress;
+		cooldown[i] = weaponCooldown;
+		ships[i] = null;
+		return i;
+	}
+
+	void setShip(final int i, final Ship ship) {
+		ships[i] = ship;
+	}
+
+	private void grow(final int capacity) {
+		id = Arrays.copyOf(id, capacity);
+		owner = Arrays.copyOf(owner, capacity);
+		health = Arrays.copyOf(health, capacity);
+		dockingStatus = Arrays.copyOf(dockingStatus, capacity);
+		dockedPlanet = Arrays.copyOf(dockedPlanet, capacity);
+		dockingProgress = Arrays.copyOf(dockingProgress, capacity);
+		cooldown = Arrays.copyOf(cooldown, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		ships = Arrays.copyOf(ships, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getId(final int i) {
+		return id[i];
+	}
+
+	public int getOwner(final int i) {
+		return owner[i];
+	}
+
+	public double getX(final int i) {
+		return x[i];
+	}
+
+	public double getY(final int i) {
+		return y[i];
+	}
+
+	public int getHealth(final int i) {
+		return health[i];
+	}
+
+	public Ship.DockingStatus getDockingStatus(final int i) {
+		return DOCKING_STATUSES[dockingStatus[i]];
+	}
+
+	public boolean isUndocked(final int i) {
+		return dockingStatus[i] == 0;
+	}
+
+	public int getDockedPlanet(final int i) {
+		return dockedPlanet[i];
+	}
+
+	public int getDockingProgress(final int i) {
+		return dockingProgress[i];
+	}
+
+	public int getWeaponCooldown(final int i) {
+		return cooldown[i];
+	}
+
+	public Ship getShip(final int i) {
+		return ships[i];
+	}
+
+	// same arithmetic as Position.getDistanceTo, so results match it exactly
+	public double distanceTo(final int i, final double fromX, final double fromY) {
+		final double dx = fromX - x[i];
+		final double dy = fromY - y[i];
+		return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+	}
+
+	// the arrays are shared, not copied; callers must not hold them across turns
+	double[] xs() {
+		return x;
+	}
+
+	double[] ys() {
+		return y;
+	}
+}
@@ -0,0 +1,540 @@
+package hlt2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import hlt2.Ship.DockingStatus;
+
+/**
+ * Headless Halite II forward model. Takes the same Move objects the bots send,
+ * advances the game by one turn, and describes the result in the engine's own
+ * frame format so a GameMap can be built from it with the normal parser.
+ *
+ * Rules follow the engine closely but not exactly: movement collisions are
+ * found in continuous time, while weapons fire once at the end of movement
+ * rather than at the moment ships come into range.
+ */
+public class Simulator {
+
+	private static final double COLLISION_EPSILON = 1e-9;
+
+	static class SimShip {
+		final int id;
+		final int owner;
+		double x, y;
+		double vx, vy;
+		int health = Constants.BASE_SHIP_HEALTH;
+		DockingStatus dockingStatus = DockingStatus.Undocked;
+		int dockedPlanet = 0;
+		int dockingProgress = 0;
+		int weaponCooldown = 0;
+		boolean alive = true;
+		// pending command for this turn
+		Move.MoveType command = Move.MoveType.Noop;
+		int commandTarget;
+
+		SimShip(final int id, final int owner, final double x, final double y) {
+			this.id = id;
+			this.owner = owner;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	static class SimPlanet {
+		final int id;
+		final double x, y, radius;
+		final int dockingSpots;
+		int health;
+		int owner = -1;
+		int currentProduction = 0;
+		int remainingProduction;
+		boolean alive = true;
+		final List<SimShip> docked = new ArrayList<>();
+
+		SimPlanet(final int id, final double x, final double y, final double radius,
+				final int dockingSpots, final int health, final int remainingProduction) {
+			this.id = id;
+			this.x = x;
+			this.y = y;
+			this.radius = radius;
+			this.dockingSpots = dockingSpots;
+			this.health = health;
+			this.remainingProduction = remainingProduction;
+		}
+	}
+
+	// collision found during movement: time within the turn and the two parties
+	static class Impact {
+		final double t;
+		final SimShip ship;
+		final SimShip otherShip;
+		final SimPlanet planet;
+
+		Impact(final double t, final SimShip ship, final SimShip otherShip, final SimPlanet planet) {
+			this.t = t;
+			this.ship = ship;
+			this.otherShip = otherShip;
+			this.planet = planet;
+		}
+	}
+
+	private final int width, height, numPlayers;
+	private final int maxTurns;
+	private final List<SimShip> ships = new ArrayList<>();
+	private final List<SimPlanet> planets = new ArrayList<>();
+	private SimShip[] shipById = new SimShip[64];
+	private int nextShipId = 0;
+	private int turn = 0;
+
+	public Simulator(final int width, final int height, final int numPlayers) {
+		this.width = width;
+		this.height = height;
+		this.numPlayers = numPlayers;
+		this.maxTurns = 100 + (int) Math.sqrt(width * height);
+	}
+
+	/**
+	 * Random map in the style of the engine's generator: planets placed with the
+	 * same symmetry as the players, three ships per player.
+	 */
+	public static Simulator generate(final long seed, final int width, final int height, final int numPlayers) {
+		final Simulator sim = new Simulator(width, height, numPlayers);
+		final Random rnd = new Random(seed);
+		final double cx = width / 2.0, cy = height / 2.0;
+
+		// a planet at the center, then symmetric groups
+		sim.addPlanet(cx, cy, 4 + rnd.nextDouble() * 4);
+		final int groups = 3 + rnd.nextInt(5);
+		int attempts = 0;
+		while (sim.planets.size() < 1 + groups * numPlayers && attempts++ < 1000) {
+			final double radius = 3 + rnd.nextDouble() * 5;
+			final double px = radius + 4 + rnd.nextDouble() * (cx - 2 * radius - 8);
+			final double py = radius + 4 + rnd.nextDouble() * (cy - 2 * radius - 8);
+			final double[][] images = numPlayers == 2
+					? new double[][] {{px, py}, {width - px, height - py}}
+					: new double[][] {{px, py}, {width - px, py}, {px, height - py}, {width - px, height - py}};
+			boolean fits = true;
+			for (double[] p : images) {
+				for (SimPlanet other : sim.planets) {
+					if (Math.hypot(p[0] - other.x, p[1] - other.y) < radius + other.radius + 10) fits = false;
+				}
+				for (double[] start : sim.startPositions()) {
+					if (Math.hypot(p[0] - start[0], p[1] - start[1]) < radius + 15) fits = false;
+				}
+			}
+			if (!fits) continue;
+			for (double[] p : images) sim.addPlanet(p[0], p[1], radius);
+		}
+
+		final double[][] starts = sim.startPositions();
+		for (int player = 0; player < numPlayers; player++) {
+			for (int k = -1; k <= 1; k++) {
+				sim.addShip(player, starts[player][0], starts[player][1] + 2 * k);
+			}
+		}
+		return sim;
+	}
+
+	private double[][] startPositions() {
+		final double qx = width / 4.0, qy = height / 4.0;
+		if (numPlayers == 2) {
+			return new double[][] {{qx, 2 * qy}, {3 * qx, 2 * qy}};
+		}
+		return new double[][] {{qx, qy}, {3 * qx, qy}, {qx, 3 * qy}, {3 * qx, 3 * qy}};
+	}
+
+	public int addPlanet(final double x, final double y, final double radius) {
+		final int spots = Math.max(2, Math.min(6, (int) Math.round(radius / 1.3)));
+		final SimPlanet p = new SimPlanet(planets.size(), x, y, radius, spots,
+				(int) Math.round(radius * Constants.MAX_SHIP_HEALTH), (int) Math.round(radius * 1000));
+		planets.add(p);
+		return p.id;
+	}
+
+	public int addShip(final int owner, final double x, final double y) {
+		final SimShip s = new SimShip(nextShipId++, owner, x, y);
+		if (s.id >= shipById.length) {
+			shipById = Arrays.copyOf(shipById, shipById.length * 2);
+		}
+		shipById[s.id] = s;
+		ships.add(s);
+		return s.id;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNumPlayers() {
+		return numPlayers;
+	}
+
+	public int getTurn() {
+		return turn;
+	}
+
+	public int getMaxTurns() {
+		return maxTurns;
+	}
+
+	public int shipCount(final int player) {
+		int count = 0;
+		for (SimShip s : ships) if (s.owner == player) count++;
+		return count;
+	}
+
+	public int totalHealth(final int player) {
+		int health = 0;
+		for (SimShip s : ships) if (s.owner == player) health += s.health;
+		return health;
+	}
+
+	public boolean isOver() {
+		if (turn >= maxTurns) return true;
+		int playersAlive = 0;
+		for (int p = 0; p < numPlayers; p++) if (shipCount(p) > 0) playersAlive++;
+		return playersAlive <= 1;
+	}
+
+	/** Players ordered best first: most ships, then most total health. */
+	public int[] ranking() {
+		final Integer[] order = new Integer[numPlayers];
+		for (int p = 0; p < numPlayers; p++) order[p] = p;
+		Arrays.sort(order, Comparator.comparingInt((Integer p) -> -shipCount(p))
+				.thenComparingInt(p -> -totalHealth(p)));
+		final int[] ranked = new int[numPlayers];
+		for (int i = 0; i < numPlayers; i++) ranked[i] = order[i];
+		return ranked;
+	}
+
+	/**
+	 * Queues one player's commands for the next step(). Moves for ships the player
+	 * does not own, or that no longer exist, are ignored, as are illegal thrusts.
+	 */
+	public void applyMoves(final int playerId, final Iterable<? extends Move> moves) {
+		for (final Move move : moves) {
+			final int id = move.getShip().getId();
+			final SimShip s = (id >= 0 && id < shipById.length) ? shipById[id] : null;
+			if (s == null || !s.alive || s.owner != playerId) {
+				continue;
+			}
+			switch (move.getType()) {
+			case Thrust:
+				final ThrustMove tm = (ThrustMove) move;
+				if (tm.getThrust() < 0 || tm.getThrust() > Constants.MAX_SPEED
+						|| tm.getAngle() < 0 || tm.getAngle() >= 360) {
+					continue;
+				}
+				s.command = Move.MoveType.Thrust;
+				s.vx = tm.getdX();
+				s.vy = tm.getdY();
+				break;
+			case Dock:
+				s.command = Move.MoveType.Dock;
+				s.commandTarget = (int) ((DockMove) move).getDestinationId();
+				break;
+			case Undock:
+				s.command = Move.MoveType.Undock;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/** Advances the game by one turn using the queued commands. */
+	public void step() {
+		processDockingCommands();
+		advanceDocking();
+		move();
+		fireWeapons();
+		removeDead();
+		produce();
+		for (SimShip s : ships) {
+			s.command = Move.MoveType.Noop;
+			s.vx = 0;
+			s.vy = 0;
+			if (s.weaponCooldown > 0) s.weaponCooldown--;
+		}
+		turn++;
+	}
+
+	private void processDockingCommands() {
+		// docking requests per planet, so contested neutral planets can be refused
+		for (SimPlanet p : planets) {
+			if (!p.alive) continue;
+			final List<SimShip> requests = new ArrayList<>();
+			for (SimShip s : ships) {
+				if (s.command == Move.MoveType.Dock && s.commandTarget == p.id
+						&& s.dockingStatus == DockingStatus.Undocked
+						&& Math.hypot(s.x - p.x, s.y - p.y) <= p.radius + Constants.DOCK_RADIUS + Constants.SHIP_RADIUS) {
+					requests.add(s);
+				}
+			}
+			if (requests.isEmpty()) continue;
+			if (p.owner == -1) {
+				final int firstOwner = requests.get(0).owner;
+				boolean contested = false;
+				for (SimShip s : requests) if (s.owner != firstOwner) contested = true;
+				if (contested) continue;
+			}
+			for (SimShip s : requests) {
+				if ((p.owner != -1 && p.owner != s.owner) || p.docked.size() >= p.dockingSpots) continue;
+				p.owner = s.owner;
+				p.docked.add(s);
+				s.dockingStatus = DockingStatus.Docking;
+				s.dockedPlanet = p.id;
+				s.dockingProgress = Constants.DOCK_TURNS;
+			}
+		}
+		for (SimShip s : ships) {
+			if (s.command == Move.MoveType.Undock && s.dockingStatus == DockingStatus.Docked) {
+				s.dockingStatus = DockingStatus.Undocking;
+				s.dockingProgress = Constants.DOCK_TURNS;
+			}
+			if (s.command == Move.MoveType.Thrust && s.dockingStatus != DockingStatus.Undocked) {
+				s.vx = 0;
+				s.vy = 0;
+			}
+		}
+	}
+
+	private void advanceDocking() {
+		for (SimShip s : ships) {
+			if (s.dockingStatus == DockingStatus.Docking && s.command != Move.MoveType.Dock) {
+				if (--s.dockingProgress <= 0) {
+					s.dockingProgress = 0;
+					s.dockingStatus = DockingStatus.Docked;
+				}
+			} else if (s.dockingStatus == DockingStatus.Undocking && s.command != Move.MoveType.Undock) {
+				if (--s.dockingProgress <= 0) {
+					s.dockingProgress = 0;
+					s.dockingStatus = DockingStatus.Undocked;
+					detachFromPlanet(s);
+				}
+			}
+		}
+	}
+
+	private void move() {
+		final List<Impact> impacts = new ArrayList<>();
+		for (int i = 0; i < ships.size(); i++) {
+			final SimShip a = ships.get(i);
+			for (int j = i + 1; j < ships.size(); j++) {
+				final SimShip b = ships.get(j);
+				final double t = firstContact(b.x - a.x, b.y - a.y, b.vx - a.vx, b.vy - a.vy,
+						2 * Constants.SHIP_RADIUS);
+				if (t >= 0) impacts.add(new Impact(t, a, b, null));
+			}
+			if (a.vx == 0 && a.vy == 0) continue;
+			for (SimPlanet p : planets) {
+				final double t = firstContact(p.x - a.x, p.y - a.y, -a.vx, -a.vy, p.radius + Constants.SHIP_RADIUS);
+				if (t >= 0) impacts.add(new Impact(t, a, null, p));
+			}
+		}
+		impacts.sort(Comparator.comparingDouble((Impact c) -> c.t));
+
+		for (Impact c : impacts) {
+			if (!c.ship.alive || c.ship.health <= 0) continue;
+			if (c.otherShip != null) {
+				if (!c.otherShip.alive || c.otherShip.health <= 0) continue;
+				final int h1 = c.ship.health, h2 = c.otherShip.health;
+				damage(c.ship, h2, c.t);
+				damage(c.otherShip, h1, c.t);
+			} else if (c.planet.alive) {
+				c.planet.health -= c.ship.health;
+				damage(c.ship, c.ship.health, c.t);
+				if (c.planet.health <= 0) destroyPlanet(c.planet);
+			}
+		}
+
+		for (SimShip s : ships) {
+			if (s.health <= 0) continue;
+			s.x += s.vx;
+			s.y += s.vy;
+			if (s.x < 0 || s.y < 0 || s.x >= width || s.y >= height) s.health = 0;
+		}
+	}
+
+	// dead ships stop where they were hit, so later impacts don't see them moving on
+	private void damage(final SimShip s, final int amount, final double t) {
+		s.health -= amount;
+		if (s.health <= 0) {
+			s.x += s.vx * t;
+			s.y += s.vy * t;
+			s.vx = 0;
+			s.vy = 0;
+		}
+	}
+
+	/**
+	 * Earliest t in [0, 1] at which a point at offset (dx, dy), moving with
+	 * relative velocity (dvx, dvy), comes within r of the origin; -1 if never.
+	 */
+	static double firstContact(final double dx, final double dy, final double dvx, final double dvy, final double r) {
+		final double c = dx * dx + dy * dy - r * r;
+		if (c <= 0) return 0;
+		final double a = dvx * dvx + dvy * dvy;
+		if (a < COLLISION_EPSILON) return -1;
+		final double b = 2 * (dx * dvx + dy * dvy);
+		final double disc = b * b - 4 * a * c;
+		if (disc < 0) return -1;
+		final double t = (-b - Math.sqrt(disc)) / (2 * a);
+		return (t >= 0 && t <= 1) ? t : -1;
+	}
+
+	private void fireWeapons() {
+		final double[] pending = new double[ships.size()];
+		final List<Integer> targets = new ArrayList<>();
+		for (int i = 0; i < ships.size(); i++) {
+			final SimShip a = ships.get(i);
+			if (a.health <= 0 || a.dockingStatus != DockingStatus.Undocked || a.weaponCooldown > 0) continue;
+			targets.clear();
+			for (int j = 0; j < ships.size(); j++) {
+				final SimShip b = ships.get(j);
+				if (b.owner == a.owner || b.health <= 0) continue;
+				if (Math.hypot(a.x - b.x, a.y - b.y) <= Constants.WEAPON_RADIUS + 2 * Constants.SHIP_RADIUS) {
+					targets.add(j);
+				}
+			}
+			if (targets.isEmpty()) continue;
+			final double each = (double) Constants.WEAPON_DAMAGE / targets.size();
+			for (int j : targets) pending[j] += each;
+			a.weaponCooldown = Constants.WEAPON_COOLDOWN;
+		}
+		for (int i = 0; i < ships.size(); i++) {
+			ships.get(i).health -= (int) pending[i];
+		}
+	}
+
+	private void destroyPlanet(final SimPlanet p) {
+		p.alive = false;
+		for (SimShip s : p.docked) s.health = 0;
+		p.docked.clear();
+		// explosion damage falls off linearly from the surface
+		for (SimShip s : ships) {
+			final double d = Math.hypot(s.x - p.x, s.y - p.y) - p.radius;
+			if (d < Constants.EXPLOSION_RADIUS) {
+				s.health -= (int) (Constants.MAX_SHIP_HEALTH * 5 * (1 - Math.max(0, d) / Constants.EXPLOSION_RADIUS));
+			}
+		}
+	}
+
+	private void removeDead() {
+		for (SimShip s : ships) {
+			if (s.health <= 0) {
+				s.alive = false;
+				detachFromPlanet(s);
+				shipById[s.id] = null;
+			}
+		}
+		ships.removeIf(s -> !s.alive);
+		planets.removeIf(p -> !p.alive);
+	}
+
+	private void detachFromPlanet(final SimShip s) {
+		for (SimPlanet p : planets) {
+			if (p.docked.remove(s) && p.docked.isEmpty()) {
+				p.owner = -1;
+				p.currentProduction = 0;
+			}
+		}
+	}
+
+	private void produce() {
+		for (SimPlanet p : planets) {
+			if (p.owner == -1) continue;
+			int producing = 0;
+			for (SimShip s : p.docked) if (s.dockingStatus == DockingStatus.Docked) producing++;
+			final int amount = Math.min(p.remainingProduction, producing * Constants.BASE_PRODUCTIVITY);
+			p.currentProduction += amount;
+			p.remainingProduction -= amount;
+			while (p.currentProduction >= Constants.SHIP_COST) {
+				p.currentProduction -= Constants.SHIP_COST;
+				spawnNear(p);
+			}
+		}
+	}
+
+	// new ships appear just off the surface, facing the map center if there is room
+	private void spawnNear(final SimPlanet p) {
+		final double towardsCenter = Math.atan2(height / 2.0 - p.y, width / 2.0 - p.x);
+		final double r = p.radius + Constants.SPAWN_RADIUS;
+		for (int k = 0; k < 12; k++) {
+			final double angle = towardsCenter + (k % 2 == 0 ? 1 : -1) * ((k + 1) / 2) * Math.PI / 6;
+			final double x = p.x + r * Math.cos(angle);
+			final double y = p.y + r * Math.sin(angle);
+			if (x < 0 || y < 0 || x >= width || y >= height) continue;
+			boolean free = true;
+			for (SimShip s : ships) {
+				if (Math.hypot(s.x - x, s.y - y) < 2 * Constants.SHIP_RADIUS) free = false;
+			}
+			if (free) {
+				addShip(p.owner, x, y);
+				return;
+			}
+		}
+	}
+
+	/** The first two lines the engine sends a bot: its id, then the map size. */
+	public String[] handshake(final int playerId) {
+		return new String[] {Integer.toString(playerId), width + " " + height};
+	}
+
+	/** The current state as one line of engine input. */
+	public String frame() {
+		final StringBuilder sb = new StringBuilder(64 + 64 * ships.size());
+		sb.append(numPlayers);
+		for (int player = 0; player < numPlayers; player++) {
+			sb.append(' ').append(player).append(' ').append(shipCount(player));
+			for (SimShip s : ships) {
+				if (s.owner != player) continue;
+				sb.append(' ').append(s.id)
+						.append(' ').append(s.x)
+						.append(' ').append(s.y)
+						.append(' ').append(s.health)
+						.append(" 0.0 0.0")
+						.append(' ').append(s.dockingStatus.ordinal())
+						.append(' ').append(s.dockingStatus == DockingStatus.Undocked ? 0 : s.dockedPlanet)
+						.append(' ').append(s.dockingProgress)
+						.append(' ').append(s.weaponCooldown);
+			}
+		}
+		sb.append(' ').append(planets.size());
+		for (SimPlanet p : planets) {
+			sb.append(' ').append(p.id)
+					.append(' ').append(p.x)
+					.append(' ').append(p.y)
+					.append(' ').append(p.health)
+					.append(' ').append(p.radius)
+					.append(' ').append(p.dockingSpots)
+					.append(' ').append(p.currentProduction)
+					.append(' ').append(p.remainingProduction)
+					.append(' ').append(p.owner == -1 ? 0 : 1)
+					.append(' ').append(p.owner == -1 ? 0 : p.owner)
+					.append(' ').append(p.docked.size());
+			for (SimShip s : p.docked) sb.append(' ').append(s.id);
+		}
+		return sb.toString();
+	}
+
+	/** A fresh GameMap of the current state, as seen by playerId. */
+	public GameMap toGameMap(final int playerId) {
+		return new GameMap(width, height, playerId).updateMap(new Metadata(frame()));
+	}
+
+	public List<Integer> shipIds(final int player) {
+		final List<Integer> ids = new ArrayList<>();
+		for (SimShip s : ships) if (s.owner == player) ids.add(s.id);
+		return Collections.unmodifiableList(ids);
+	}
+}
@@ -0,0 +1,127 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform bucket grid over a set of points, rebuilt once per turn.
+ * Radius queries return the indices (into the list the grid was built from)
+ * of every point in a cell touched by the query circle, in ascending order,
+ * so callers still do the exact distance test themselves.
+ */
+public class SpatialGrid {
+
+	public static final double DEFAULT_CELL_SIZE = Constants.WEAPON_RADIUS + Constants.MAX_SPEED;
+
+	private final double cellSize;
+	private final int cols, rows;
+	private final int[] cellStart; // cellStart[c]..cellStart[c+1] index into cellItems
+	private int[] cellItems = new int[0];
+	private int[] cellOf = new int[0];
+	private int size = 0;
+	private double[] scratchX = new double[0];
+	private double[] scratchY = new double[0];
+
+	public SpatialGrid(final double width, final double height, final double cellSize) {
+		this.cellSize = cellSize;
+		this.cols = Math.max(1, (int) Math.ceil(width / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		this.cellStart = new int[cols * rows + 1];
+	}
+
+	public void build(final List<? extends Position> points) {
+		final int n = points.size();
+		if (scratchX.length < n) {
+			scratchX = new double[n * 2];
+			scratchY = new double[n * 2];
+		}
+		for (int i = 0; i < n; i++) {
+			scratchX[i] = points.get(i).getXPos();
+			scratchY[i] = points.get(i).getYPos();
+		}
+		build(scratchX, scratchY, n);
+	}
+
+	public void build(final double[] xs, final double[] ys, final int n) {
+		size = n;
+		if (cellItems.length < size) {
+			cellItems = new int[size * 2];
+			cellOf = new int[size * 2];
+		}
+		Arrays.fill(cellStart, 0);
+
+		// counting sort of point indices by cell; indices stay ascending within a cell
+		for (int i = 0; i < size; i++) {
+			final int c = cellIndex(col(xs[i]), row(ys[i]));
+			cellOf[i] = c;
+			cellStart[c + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		final int[] fill = Arrays.copyOf(cellStart, cellStart.length);
+		for (int i = 0; i < size; i++) {
+			cellItems[fill[cellOf[i]]++] = i;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return indices of all points in cells overlapping the square around (x, y)
+	 * with half-side radius, sorted ascending
+	 */
+	public int[] candidates(final double x, final double y, final double radius) {
+		final int c0 = col(x - radius), c1 = col(x + radius);
+		final int r0 = row(y - radius), r1 = row(y + radius);
+
+		int count = 0;
+		for (int r = r0; r <= r1; r++) {
+			count += cellStart[cellIndex(c1, r) + 1] - cellStart[cellIndex(c0, r)];
+		}
+		final int[] found = new int[count];
+		int n = 0;
+		for (int r = r0; r <= r1; r++) {
+			// cells of one row are contiguous, so copy the whole run at once
+			final int from = cellStart[cellIndex(c0, r)];
+			final int to = cellStart[cellIndex(c1, r) + 1];
+			System.arraycopy(cellItems, from, found, n, to - from);
+			n += to - from;
+		}
+		if (r1 > r0 || c1 > c0) {
+			Arrays.sort(found);
+		}
+		return found;
+	}
+
+	/*
+	 * Allocation-free box queries, for callers in this package: the points in
+	 * cells col0..col1 of one row are item(runStart(col0, row)) up to
+	 * item(runEnd(col1, row) - 1), in no particular order.
+	 */
+	int runStart(final int col0, final int row) {
+		return cellStart[cellIndex(col0, row)];
+	}
+
+	int runEnd(final int col1, final int row) {
+		return cellStart[cellIndex(col1, row) + 1];
+	}
+
+	int item(final int k) {
+		return cellItems[k];
+	}
+
+	int col(final double x) {
+		return Math.min(cols - 1, Math.max(0, (int) Math.floor(x / cellSize)));
+	}
+
+	int row(final double y) {
+		return Math.min(rows - 1, Math.max(0, (int) Math.floor(y / cellSize)));
+	}
+
+	private int cellIndex(final int col, final int row) {
+		return row * cols + col;
+	}
+}
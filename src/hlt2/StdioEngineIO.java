@@ -0,0 +1,60 @@
+package hlt2;
+
+import java.io.IOException;
+
+/**
+ * The engine's pipe: frames come in on System.in, moves go out on System.out.
+ * Input is read through one buffer shared by all instances, since there is
+ * only one stdin.
+ */
+public class StdioEngineIO implements EngineIO {
+
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+    private static final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+    private static int inputPos = 0;
+    private static int inputEnd = 0;
+
+    private static int readByte() throws IOException {
+        if (inputPos == inputEnd) {
+            inputEnd = System.in.read(inputBuffer, 0, INPUT_BUFFER_SIZE);
+            inputPos = 0;
+            if (inputEnd <= 0) {
+                inputEnd = 0;
+                return -1;
+            }
+        }
+        return inputBuffer[inputPos++] & 0xFF; // bytes >= 0x80 are data, not EOF
+    }
+
+    @Override
+    public void readLine(final Metadata into) {
+        try {
+            into.clear();
+            int buffer;
+
+            for (; (buffer = readByte()) >= 0;) {
+                if (buffer == '\n') {
+                    break;
+                }
+                if (buffer == '\r') {
+                    // Ignore carriage return if on windows for manual testing.
+                    continue;
+                }
+                into.append((byte) buffer);
+            }
+        } catch(final Exception e) {
+            System.exit(1);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void writeLine(final String line) {
+        System.out.println(line);
+    }
+
+    @Override
+    public void writeMoves(final Iterable<Move> moves) {
+        System.out.println(Networking.formatMoves(moves));
+    }
+}
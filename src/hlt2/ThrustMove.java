@@ -20,11 +20,11 @@ public class ThrustMove extends Move {
     }
     
     public double getdX() {
-    	return thrust * Math.cos(angleDeg * Math.PI/180);
+    	return MoveLattice.dx(angleDeg, thrust);
     }
     
     public double getdY() {
-    	return thrust * Math.sin(angleDeg * Math.PI/180);
+    	return MoveLattice.dy(angleDeg, thrust);
     }
     
     public Position getFinalPos() {
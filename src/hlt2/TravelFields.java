@@ -0,0 +1,223 @@
+package hlt2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * How far a ship has to travel to reach each planet's surface, from anywhere
+ * on the map, going around the other planets. One float field per planet on
+ * a grid of CELL_SIZE, built in parallel at the start of the game; a query is
+ * a bilinear lookup into it.
+ *
+ * A grid point that can see the planet past every other planet gets the
+ * straight distance to the surface, exactly what getDistanceTo - radius
+ * gives. The points in the shadow of other planets are filled by Dijkstra
+ * from those, with steps to the 16 nearest grid neighbours, which is within a
+ * few percent of the true detour. Points inside another planet's clearance are
+ * reached but never passed through.
+ *
+ * A destroyed planet casts a shadow in every other planet's field, so
+ * planetDestroyed drops its field and rebuilds all the others without it.
+ */
+public class TravelFields {
+
+	public static final double CELL_SIZE = 2.0;
+
+	private static final double CLEARANCE = Constants.FORECAST_FUDGE_FACTOR;
+	// grid steps: every (dx, dy) with |dx|, |dy| <= 2 that is not a multiple of a shorter one
+	private static final int[] STEP_X = { 1, 1, 0, -1, -1, -1, 0, 1, 2, 1, -1, -2, -2, -1, 1, 2 };
+	private static final int[] STEP_Y = { 0, 1, 1, 1, 0, -1, -1, -1, 1, 2, 2, 1, -1, -2, -2, -1 };
+
+	private final int cols, rows;
+	private final HashMap<Integer, float[]> fields = new HashMap<>();
+
+	public TravelFields(final GameMap gameMap) {
+		cols = (int) Math.ceil(gameMap.getWidth() / CELL_SIZE) + 1;
+		rows = (int) Math.ceil(gameMap.getHeight() / CELL_SIZE) + 1;
+		buildAll(gameMap);
+	}
+
+	/**
+	 * Rebuilds the fields around the planets still on the map; for GameMap's
+	 * PLANET_DESTROYED events, once the planet is gone from it
+	 */
+	public void planetDestroyed(final GameMap gameMap, final int id) {
+		if (fields.remove(id) != null) {
+			buildAll(gameMap);
+		}
+	}
+
+	private void buildAll(final GameMap gameMap) {
+		final Planet[] planets = gameMap.getAllPlanets().values().toArray(new Planet[0]);
+		// the planet whose clearance covers each grid point, or -1
+		final int[] obstacle = new int[cols * rows];
+		Arrays.fill(obstacle, -1);
+		for (int gy = 0; gy < rows; gy++) {
+			for (int gx = 0; gx < cols; gx++) {
+				final Position pos = new Position(gx * CELL_SIZE, gy * CELL_SIZE);
+				for (int p = 0; p < planets.length; p++) {
+					if (planets[p].getDistanceTo(pos) <= planets[p].getRadius() + CLEARANCE) {
+						obstacle[gy * cols + gx] = p;
+						break;
+					}
+				}
+			}
+		}
+
+		final float[][] built = new float[planets.length][];
+		Parallel.forEach(planets.length, 2, p -> built[p] = build(planets, p, obstacle));
+		fields.clear();
+		for (int p = 0; p < planets.length; p++) {
+			fields.put(planets[p].getId(), built[p]);
+		}
+	}
+
+	/**
+	 * @return travel distance from pos to the surface of the planet, or the
+	 * straight distance if the planet has no field
+	 */
+	public double distance(final Planet planet, final Position pos) {
+		final float[] field = fields.get(planet.getId());
+		if (field == null) {
+			return planet.getDistanceTo(pos) - planet.getRadius();
+		}
+		final double fx = clamp(pos.getXPos() / CELL_SIZE, cols - 1);
+		final double fy = clamp(pos.getYPos() / CELL_SIZE, rows - 1);
+		final int gx = Math.min((int) fx, cols - 2);
+		final int gy = Math.min((int) fy, rows - 2);
+		final double tx = fx - gx, ty = fy - gy;
+		final int g = gy * cols + gx;
+		return (1 - ty) * ((1 - tx) * field[g] + tx * field[g + 1])
+				+ ty * ((1 - tx) * field[g + cols] + tx * field[g + cols + 1]);
+	}
+
+	private static double clamp(final double v, final int max) {
+		return Math.max(0, Math.min(max, v));
+	}
+
+	private float[] build(final Planet[] planets, final int target, final int[] obstacle) {
+		final Planet planet = planets[target];
+		final float[] field = new float[cols * rows];
+		Arrays.fill(field, Float.POSITIVE_INFINITY);
+		final Queue queue = new Queue(cols * rows);
+
+		for (int gy = 0; gy < rows; gy++) {
+			for (int gx = 0; gx < cols; gx++) {
+				final int g = gy * cols + gx;
+				final Position pos = new Position(gx * CELL_SIZE, gy * CELL_SIZE);
+				if (sees(planets, target, pos)) {
+					field[g] = (float) Math.max(0, planet.getDistanceTo(pos) - planet.getRadius());
+					queue.push(field[g], g);
+				}
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			final long top = queue.pop();
+			final int g = (int) top;
+			final float value = Float.intBitsToFloat((int) (top >>> 32));
+			if (value > field[g]) {
+				continue; // stale
+			}
+			if (obstacle[g] >= 0 && obstacle[g] != target) {
+				continue; // inside another planet: reached, but no way through
+			}
+			final int gx = g % cols, gy = g / cols;
+			for (int s = 0; s < STEP_X.length; s++) {
+				final int nx = gx + STEP_X[s], ny = gy + STEP_Y[s];
+				if (nx < 0 || ny < 0 || nx >= cols || ny >= rows) {
+					continue;
+				}
+				final int n = ny * cols + nx;
+				final float c = (float) (value + CELL_SIZE * Math.sqrt(STEP_X[s] * STEP_X[s] + STEP_Y[s] * STEP_Y[s]));
+				if (c < field[n]) {
+					field[n] = c;
+					queue.push(c, n);
+				}
+			}
+		}
+		// deep inside other planets nothing gets through; no ship is ever there, but lookups next to them must stay finite
+		for (int g = 0; g < field.length; g++) {
+			if (field[g] == Float.POSITIVE_INFINITY) {
+				field[g] = (float) (planet.getDistanceTo(new Position(g % cols * CELL_SIZE, g / cols * CELL_SIZE)) - planet.getRadius());
+			}
+		}
+		return field;
+	}
+
+	// whether the way from pos straight to the nearest point of planet target misses every other planet
+	private static boolean sees(final Planet[] planets, final int target, final Position pos) {
+		final Planet planet = planets[target];
+		final double d = planet.getDistanceTo(pos);
+		if (d <= planet.getRadius()) {
+			return true;
+		}
+		final double ex = planet.getXPos() + (pos.getXPos() - planet.getXPos()) * planet.getRadius() / d;
+		final double ey = planet.getYPos() + (pos.getYPos() - planet.getYPos()) * planet.getRadius() / d;
+		for (int p = 0; p < planets.length; p++) {
+			final Planet other = planets[p];
+			if (p == target || other.getDistanceTo(pos) <= other.getRadius() + CLEARANCE) {
+				continue;
+			}
+			if (Collision.segmentCircleIntersect(pos.getXPos(), pos.getYPos(), ex, ey,
+					other.getXPos(), other.getYPos(), other.getRadius(), CLEARANCE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getNumFields() {
+		return fields.size();
+	}
+
+	// binary heap of grid points; keys are the value's float bits over the grid index,
+	// and values are never negative, so they sort as numbers
+	private static class Queue {
+		private long[] keys;
+		private int size = 0;
+
+		Queue(final int capacity) {
+			keys = new long[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		void push(final float value, final int g) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			final long key = ((long) Float.floatToIntBits(value) << 32) | g;
+			int i = size++;
+			while (i > 0 && keys[(i - 1) / 2] > key) {
+				keys[i] = keys[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			keys[i] = key;
+		}
+
+		long pop() {
+			final long top = keys[0];
+			final long last = keys[--size];
+			int i = 0;
+			for (;;) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (keys[child] >= last) {
+					break;
+				}
+				keys[i] = keys[child];
+				i = child;
+			}
+			keys[i] = last;
+			return top;
+		}
+	}
+}
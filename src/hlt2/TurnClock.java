@@ -0,0 +1,119 @@
+package hlt2;
+
+/**
+ * Wall-clock budget for one turn. Networking starts it as soon as a frame has
+ * been read; the bot marks its stages and asks how much time is left, so later
+ * stages can be cut short and moves are always sent before the engine's limit.
+ */
+public class TurnClock {
+
+	/** The engine kills bots that take longer than this to answer */
+	public static final long TURN_LIMIT_NANOS = 2_000_000_000L;
+
+	/** Past this point, do cheaper versions of the remaining work */
+	public static final long SOFT_BUDGET_NANOS = 1_100_000_000L;
+
+	/** Past this point, stop computing and send what we have */
+	public static final long HARD_BUDGET_NANOS = 1_500_000_000L;
+
+	private static final int MAX_STAGES = 32;
+
+	private long turnStart = System.nanoTime();
+	private long stageStart = turnStart;
+	private int currentStage = -1;
+	private int stageCount = 0;
+	private final String[] stageNames = new String[MAX_STAGES];
+	private final long[] stageNanos = new long[MAX_STAGES];
+
+	public void start() {
+		turnStart = System.nanoTime();
+		stageStart = turnStart;
+		currentStage = -1;
+		stageCount = 0;
+	}
+
+	public long elapsedNanos() {
+		return System.nanoTime() - turnStart;
+	}
+
+	public long remainingNanos() {
+		return HARD_BUDGET_NANOS - elapsedNanos();
+	}
+
+	public boolean pastSoftDeadline() {
+		return elapsedNanos() > SOFT_BUDGET_NANOS;
+	}
+
+	public boolean pastHardDeadline() {
+		return elapsedNanos() > HARD_BUDGET_NANOS;
+	}
+
+	/**
+	 * Ends the stage in progress (if any) and starts timing a new one.
+	 * Stages with the same name within a turn are summed.
+	 */
+	public void beginStage(final String name) {
+		endStage();
+		currentStage = stageIndex(name);
+	}
+
+	public void endStage() {
+		final long now = System.nanoTime();
+		if (currentStage >= 0) {
+			stageNanos[currentStage] += now - stageStart;
+		}
+		currentStage = -1;
+		stageStart = now;
+	}
+
+	private int stageIndex(final String name) {
+		for (int i = 0; i < stageCount; i++) {
+			if (stageNames[i].equals(name)) {
+				return i;
+			}
+		}
+		if (stageCount == MAX_STAGES) {
+			return MAX_STAGES - 1; // lump the overflow together rather than fail mid-turn
+		}
+		stageNames[stageCount] = name;
+		stageNanos[stageCount] = 0;
+		return stageCount++;
+	}
+
+	public int getStageCount() {
+		return stageCount;
+	}
+
+	public String getStageName(final int i) {
+		return stageNames[i];
+	}
+
+	public long getStageNanos(final int i) {
+		return stageNanos[i];
+	}
+
+	/**
+	 * How many 1-degree corrections a navigation call may still afford.
+	 * Full search while comfortably inside the budget; a narrow search after the
+	 * soft deadline; none after the hard deadline (the caller should fall back).
+	 */
+	public int navigationCorrections(final int maxCorrections) {
+		final long elapsed = elapsedNanos();
+		if (elapsed > HARD_BUDGET_NANOS) {
+			return 0;
+		}
+		if (elapsed > SOFT_BUDGET_NANOS) {
+			return Math.max(1, maxCorrections / 6);
+		}
+		return maxCorrections;
+	}
+
+	public String summary() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(elapsedNanos() / 1_000_000).append(" ms:");
+		for (int i = 0; i < stageCount; i++) {
+			sb.append(' ').append(stageNames[i]).append('=').append(stageNanos[i] / 1_000).append("us");
+		}
+		return sb.toString();
+	}
+}